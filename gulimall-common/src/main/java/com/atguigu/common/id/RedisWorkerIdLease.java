@@ -0,0 +1,165 @@
+package com.atguigu.common.id;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用redis给SnowflakeIdGenerator租用worker id
+ * 1. 启动时从随机位置开始SET NX抢占 {namespace}:{workerId}，值是本实例的token，带过期时间
+ * 2. 每隔lease/3续期一次，同时在 {namespace}:floor 里记录本实例在租约内可能发出的最大时间戳，
+ * 下一个拿到这个worker id的实例从这个时间戳之后发号，不会和前一个持有者重复
+ * 3. 续期失败(被别人占用或者redis不可用)时生成器在本地有效期过后停止发号，租约丢失后重新抢占
+ * 所有共用订单号的服务要使用同一个namespace
+ */
+@Slf4j
+public class RedisWorkerIdLease {
+
+    public static final String DEFAULT_NAMESPACE = "gulimall:id:worker";
+
+    private static final String RENEW_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "redis.call('pexpire', KEYS[1], ARGV[2]) " +
+                    "redis.call('hset', KEYS[2], ARGV[3], ARGV[4]) " +
+                    "return 1 end " +
+                    "return 0";
+
+    private static final String RELEASE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "redis.call('hset', KEYS[2], ARGV[2], ARGV[3]) " +
+                    "redis.call('del', KEYS[1]) " +
+                    "return 1 end " +
+                    "return 0";
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final SnowflakeIdGenerator generator;
+
+    private final String namespace;
+
+    private final long leaseMillis;
+
+    private final long maxAheadMillis;
+
+    private final String token = UUID.randomUUID().toString();
+
+    private final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "worker-id-lease");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile int workerId = -1;
+
+    public RedisWorkerIdLease(StringRedisTemplate redisTemplate, SnowflakeIdGenerator generator) {
+        this(redisTemplate, generator, DEFAULT_NAMESPACE, 30000, 2000);
+    }
+
+    /**
+     * @param maxAheadMillis 和生成器的maxAheadMillis一致
+     */
+    public RedisWorkerIdLease(StringRedisTemplate redisTemplate, SnowflakeIdGenerator generator,
+                              String namespace, long leaseMillis, long maxAheadMillis) {
+        this.redisTemplate = redisTemplate;
+        this.generator = generator;
+        this.namespace = namespace;
+        this.leaseMillis = leaseMillis;
+        this.maxAheadMillis = maxAheadMillis;
+    }
+
+    public void start() throws InterruptedException {
+        acquire();
+        long period = leaseMillis / 3;
+        renewer.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        renewer.shutdownNow();
+        int current = workerId;
+        if (current < 0) {
+            return;
+        }
+        generator.revoke();
+        try {
+            // 正常下线时记录实际发到的时间戳，下一个持有者不用等待
+            redisTemplate.execute(new DefaultRedisScript<>(RELEASE_SCRIPT, Long.class),
+                    Arrays.asList(workerKey(current), floorKey()),
+                    token, String.valueOf(current), String.valueOf(generator.lastMillis()));
+        } catch (Exception e) {
+            log.warn("释放worker id {}失败，等待租约自然过期", current, e);
+        }
+    }
+
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    private void acquire() throws InterruptedException {
+        int size = SnowflakeIdGenerator.MAX_WORKER_ID + 1;
+        int start = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; i++) {
+            int candidate = (start + i) % size;
+            long requestTime = System.currentTimeMillis();
+            Boolean ok = redisTemplate.opsForValue().setIfAbsent(workerKey(candidate), token, leaseMillis, TimeUnit.MILLISECONDS);
+            if (Boolean.TRUE.equals(ok)) {
+                Object previous = redisTemplate.opsForHash().get(floorKey(), String.valueOf(candidate));
+                long floor = previous == null ? 0 : Long.parseLong(previous.toString());
+                // 第一次续期之前宕机时，下一个持有者也要从本实例可能发到的时间戳之后开始
+                redisTemplate.opsForHash().put(floorKey(), String.valueOf(candidate),
+                        String.valueOf(Math.max(floor, requestTime) + leaseMillis + maxAheadMillis));
+                generator.assign(candidate, floor, validUntil(requestTime));
+                workerId = candidate;
+                log.info("租用worker id {}", candidate);
+                return;
+            }
+        }
+        throw new IllegalStateException("没有空闲的worker id，" + namespace + "下的" + size + "个worker id都已被占用");
+    }
+
+    private void renew() {
+        int current = workerId;
+        long requestTime = System.currentTimeMillis();
+        try {
+            // 本次租约内最多发到 max(已发出的时间戳, 当前时间) + lease + maxAhead
+            long floor = Math.max(generator.lastMillis(), requestTime) + leaseMillis + maxAheadMillis;
+            Long renewed = redisTemplate.execute(new DefaultRedisScript<>(RENEW_SCRIPT, Long.class),
+                    Arrays.asList(workerKey(current), floorKey()),
+                    token, String.valueOf(leaseMillis), String.valueOf(current), String.valueOf(floor));
+            if (renewed != null && renewed == 1) {
+                generator.renew(validUntil(requestTime));
+                return;
+            }
+            log.error("worker id {}的租约已丢失，重新租用", current);
+            generator.revoke();
+            workerId = -1;
+            acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // redis暂时不可用，生成器在本地有效期过后自动停止发号，下次继续续期
+            log.warn("worker id {}续期失败", current, e);
+        }
+    }
+
+    /**
+     * 本地有效期比redis里的过期时间提前lease/3，留出时钟误差和网络延迟的余量
+     */
+    private long validUntil(long requestTime) {
+        return requestTime + leaseMillis - leaseMillis / 3;
+    }
+
+    private String workerKey(int workerId) {
+        return namespace + ":" + workerId;
+    }
+
+    private String floorKey() {
+        return namespace + ":floor";
+    }
+}
@@ -0,0 +1,201 @@
+package com.atguigu.common.id;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 雪花算法的分布式id生成器
+ * id结构(63位)：41位毫秒时间戳(从2020-01-01起) | 10位worker id | 12位序列号，单个节点每毫秒4096个id
+ * 1. 无锁：上一次发出的id就是全部状态，放在一个AtomicLong里，一次CAS发一个(或者一批)id
+ * 2. 时钟回拨和突发：在上一次的时间戳上继续递增序列号，序列号用完借用下一毫秒，
+ * 逻辑时间最多领先系统时钟maxAheadMillis，超过后短暂等待时钟追上；回拨超过2倍maxAheadMillis时抛出异常
+ * 3. worker id由RedisWorkerIdLease在启动时租用并定时续期，租约过期后停止发号，保证跨节点唯一
+ */
+public class SnowflakeIdGenerator {
+
+    /**
+     * 起始时间 2020-01-01 00:00:00 UTC
+     */
+    public static final long EPOCH = 1577836800000L;
+
+    public static final int WORKER_ID_BITS = 10;
+
+    public static final int SEQUENCE_BITS = 12;
+
+    public static final int MAX_WORKER_ID = (1 << WORKER_ID_BITS) - 1;
+
+    private static final int WORKER_ID_SHIFT = SEQUENCE_BITS;
+
+    private static final int TIMESTAMP_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    private static final long WORKER_ID_MASK = (long) MAX_WORKER_ID << WORKER_ID_SHIFT;
+
+    /**
+     * 逻辑时间领先太多时每次等待的时间
+     */
+    private static final long BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * 一次最多预留的id数
+     */
+    public static final int MAX_BATCH = 1 << 16;
+
+    private final long maxAheadMillis;
+
+    /**
+     * 上一次发出的id
+     */
+    private final AtomicLong last = new AtomicLong();
+
+    /**
+     * worker id租约的本地有效期，过期后不再发号
+     */
+    private volatile long validUntil;
+
+    public SnowflakeIdGenerator() {
+        this(2000);
+    }
+
+    /**
+     * @param maxAheadMillis 逻辑时间允许领先系统时钟的毫秒数，用来吸收时钟回拨和瞬时超过每毫秒4096个的突发；
+     *                       至少要容纳一次预留MAX_BATCH个id，否则nextIds永远等不到时钟
+     */
+    public SnowflakeIdGenerator(long maxAheadMillis) {
+        if (maxAheadMillis < MAX_BATCH >> SEQUENCE_BITS) {
+            throw new IllegalArgumentException("maxAheadMillis不能小于" + (MAX_BATCH >> SEQUENCE_BITS) + "：" + maxAheadMillis);
+        }
+        this.maxAheadMillis = maxAheadMillis;
+    }
+
+    /**
+     * 使用新的worker id发号，之后发出的id时间戳都大于floorMillis
+     * floorMillis不在系统时钟之前时先等待时钟追上，避免重启后和上一个持有者的id重复
+     *
+     * @param floorMillis 上一个持有者可能发出的最大时间戳(绝对毫秒)，没有时传0
+     * @param validUntil  租约的本地有效期(绝对毫秒)
+     */
+    public void assign(int workerId, long floorMillis, long validUntil) throws InterruptedException {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("worker id超出范围：" + workerId);
+        }
+        revoke();
+        long wait = floorMillis + 1 - clock();
+        if (wait > 0) {
+            TimeUnit.MILLISECONDS.sleep(wait);
+        }
+        // 重新租用时也不能早于本实例自己发过的时间戳
+        long startMillis = Math.max(Math.max(floorMillis + 1, clock()), lastMillis() + 1) - EPOCH;
+        last.set(startMillis << TIMESTAMP_SHIFT | (long) workerId << WORKER_ID_SHIFT);
+        this.validUntil = validUntil;
+    }
+
+    /**
+     * 续期成功后延长本地有效期
+     */
+    public void renew(long validUntil) {
+        this.validUntil = validUntil;
+    }
+
+    /**
+     * 租约丢失，立即停止发号
+     */
+    public void revoke() {
+        this.validUntil = 0;
+    }
+
+    public int getWorkerId() {
+        return (int) ((last.get() & WORKER_ID_MASK) >>> WORKER_ID_SHIFT);
+    }
+
+    /**
+     * 已发出的最大时间戳(绝对毫秒)
+     */
+    public long lastMillis() {
+        return (last.get() >>> TIMESTAMP_SHIFT) + EPOCH;
+    }
+
+    public long nextId() {
+        for (;;) {
+            long current = last.get();
+            long next = next(current, currentMillis());
+            if (next < 0) {
+                LockSupport.parkNanos(BACKOFF_NANOS);
+            } else if (last.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    public String nextIdString() {
+        return Long.toString(nextId());
+    }
+
+    /**
+     * 一次CAS预留count个连续发放的id，给秒杀这类突发场景在本地分发
+     */
+    public long[] nextIds(int count) {
+        if (count <= 0 || count > MAX_BATCH) {
+            throw new IllegalArgumentException("一次预留的id数必须在1到" + MAX_BATCH + "之间：" + count);
+        }
+        long[] ids = new long[count];
+        for (;;) {
+            long current = last.get();
+            long now = currentMillis();
+            long next = current;
+            for (int i = 0; i < count && next >= 0; i++) {
+                next = next(next, now);
+                ids[i] = next;
+            }
+            if (next < 0) {
+                LockSupport.parkNanos(BACKOFF_NANOS);
+            } else if (last.compareAndSet(current, next)) {
+                return ids;
+            }
+        }
+    }
+
+    /**
+     * 相对EPOCH的当前毫秒数，同时检查租约
+     */
+    private long currentMillis() {
+        long now = clock();
+        if (now >= validUntil) {
+            throw new IllegalStateException("worker id租约未分配或已过期，暂停发号");
+        }
+        return now - EPOCH;
+    }
+
+    /**
+     * 系统时钟(绝对毫秒)
+     */
+    protected long clock() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * 计算下一个id，逻辑时间需要等待系统时钟时返回-1
+     */
+    private long next(long current, long nowMillis) {
+        long lastMillis = current >>> TIMESTAMP_SHIFT;
+        long workerBits = current & WORKER_ID_MASK;
+        if (nowMillis > lastMillis) {
+            return nowMillis << TIMESTAMP_SHIFT | workerBits;
+        }
+        // 时钟没走或者回拨：继续递增序列号，用完后借用下一毫秒
+        if ((current & SEQUENCE_MASK) < SEQUENCE_MASK) {
+            return current + 1;
+        }
+        long nextMillis = lastMillis + 1;
+        long ahead = nextMillis - nowMillis;
+        if (ahead > 2 * maxAheadMillis) {
+            throw new IllegalStateException("时钟回拨过大，逻辑时间领先系统时钟" + ahead + "ms");
+        }
+        if (ahead > maxAheadMillis) {
+            return -1;
+        }
+        return nextMillis << TIMESTAMP_SHIFT | workerBits;
+    }
+}
@@ -0,0 +1,19 @@
+package com.atguigu.common.to.mq;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 一批订单关闭后的库存释放消息，代替每个订单一条OrderTo
+ */
+
+@Data
+public class OrderBatchReleaseTo {
+
+    /**
+     * 本批关闭的订单号
+     */
+    private List<String> orderSns;
+
+}
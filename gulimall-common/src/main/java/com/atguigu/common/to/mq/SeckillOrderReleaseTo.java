@@ -0,0 +1,19 @@
+package com.atguigu.common.to.mq;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 一批秒杀订单关闭后的秒杀库存归还消息，由秒杀服务加回redis中的库存
+ */
+
+@Data
+public class SeckillOrderReleaseTo {
+
+    /**
+     * 本批关闭的秒杀订单，只用到订单号、场次、商品和数量
+     */
+    private List<SeckillOrderTo> orders;
+
+}
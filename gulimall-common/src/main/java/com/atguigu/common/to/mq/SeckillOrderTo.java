@@ -8,15 +8,15 @@ import java.math.BigDecimal;
 @Data
 public class SeckillOrderTo {
 
-    private String orderSn; // 
+    private String orderSn; // 订单号
 
-    private Long promotionSessionId; // ID
+    private Long promotionSessionId; // 活动场次ID
 
-    private Long skuId; // ƷID
+    private Long skuId; // 商品ID
 
-    private BigDecimal seckillPrice; // ɱ۸
+    private BigDecimal seckillPrice; // 秒杀价格
 
-    private Integer num; // 
+    private Integer num; // 购买数量
 
-    private Long memberId; // ԱID
+    private Long memberId; // 会员ID
 }
@@ -10,8 +10,6 @@ import lombok.Data;
 @Data
 public class StockLockedTo {
 
-    private Long id; // 库存工作单ID
-
-    private StockDetailTo detailTo; // 工作详情的所有ID
+    private Long id; // 库存工作单ID，到期后按工作单整体解锁
 
 }
@@ -0,0 +1,240 @@
+package com.atguigu.common.id;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * worker id租约：抢占、续期、租约丢失后重新租用、上一个持有者的时间戳下限，用内嵌redis测试
+ */
+class RedisWorkerIdLeaseTest {
+
+    private static final String NAMESPACE = "test:id:worker";
+
+    private static final long LEASE = 1500;
+
+    private static final long MAX_AHEAD = 16;
+
+    private static RedisServer redisServer;
+
+    private static JedisConnectionFactory connectionFactory;
+
+    private static StringRedisTemplate redisTemplate;
+
+    private final List<RedisWorkerIdLease> leases = new ArrayList<>();
+
+    @BeforeAll
+    static void startRedis() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = RedisServer.builder().port(port).setting("bind 127.0.0.1").setting("save \"\"").build();
+        redisServer.start();
+        connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @BeforeEach
+    void flush() {
+        RedisConnection connection = connectionFactory.getConnection();
+        try {
+            connection.flushDb();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @AfterEach
+    void stopLeases() {
+        leases.forEach(RedisWorkerIdLease::stop);
+    }
+
+    @Test
+    void instancesLeaseDistinctWorkerIds() throws InterruptedException {
+        Set<Integer> workerIds = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            SnowflakeIdGenerator generator = new SnowflakeIdGenerator(MAX_AHEAD);
+            RedisWorkerIdLease lease = start(generator);
+            assertTrue(workerIds.add(lease.getWorkerId()), "worker id重复：" + lease.getWorkerId());
+            assertEquals(lease.getWorkerId(), generator.getWorkerId());
+            assertEquals(lease.getWorkerId(), workerId(generator.nextId()));
+        }
+    }
+
+    @Test
+    void acquireRecordsFloorCoveringTheWholeLease() throws InterruptedException {
+        long before = System.currentTimeMillis();
+        RedisWorkerIdLease lease = start(new SnowflakeIdGenerator(MAX_AHEAD));
+
+        // 第一次续期之前宕机，下一个持有者也要从这个租约可能发到的时间戳之后开始
+        assertTrue(floor(lease.getWorkerId()) >= before + LEASE + MAX_AHEAD);
+    }
+
+    @Test
+    void newHolderStartsAfterPreviousHoldersFloor() throws InterruptedException {
+        int free = 7;
+        occupyAllExcept(free);
+        long floor = System.currentTimeMillis() + 200;
+        redisTemplate.opsForHash().put(NAMESPACE + ":floor", String.valueOf(free), String.valueOf(floor));
+
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(MAX_AHEAD);
+        RedisWorkerIdLease lease = start(generator);
+
+        assertEquals(free, lease.getWorkerId());
+        long id = generator.nextId();
+        assertTrue(millis(id) > floor, "新持有者发出了上一个持有者时间范围内的id");
+        assertTrue(System.currentTimeMillis() > floor);
+    }
+
+    @Test
+    void failsWhenEveryWorkerIdIsTaken() {
+        occupyAllExcept(-1);
+        assertThrows(IllegalStateException.class, () -> start(new SnowflakeIdGenerator(MAX_AHEAD)));
+    }
+
+    @Test
+    void renewKeepsLeaseAndAdvancesFloor() throws InterruptedException {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(MAX_AHEAD);
+        RedisWorkerIdLease lease = start(generator);
+        int workerId = lease.getWorkerId();
+        long firstFloor = floor(workerId);
+
+        // 超过一个租约周期后仍然持有同一个worker id，本地有效期也被延长
+        Thread.sleep(LEASE * 3 / 2);
+        assertEquals(workerId, lease.getWorkerId());
+        assertEquals(workerId, workerId(generator.nextId()));
+        assertTrue(redisTemplate.hasKey(NAMESPACE + ":" + workerId));
+        assertTrue(floor(workerId) > firstFloor);
+    }
+
+    @Test
+    void lostLeaseIsReacquiredUnderAnotherWorkerId() throws InterruptedException {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(MAX_AHEAD);
+        RedisWorkerIdLease lease = start(generator);
+        int lost = lease.getWorkerId();
+        long lastBefore = generator.nextId();
+
+        // 租约过期后被其他实例抢走
+        redisTemplate.opsForValue().set(NAMESPACE + ":" + lost, "other-instance");
+
+        await(() -> lease.getWorkerId() >= 0 && lease.getWorkerId() != lost);
+        assertEquals("other-instance", redisTemplate.opsForValue().get(NAMESPACE + ":" + lost));
+        long id = generator.nextId();
+        assertEquals(lease.getWorkerId(), workerId(id));
+        assertTrue(millis(id) > millis(lastBefore));
+    }
+
+    @Test
+    void stopReleasesWorkerIdAndRecordsActualFloor() throws InterruptedException {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(MAX_AHEAD);
+        RedisWorkerIdLease lease = start(generator);
+        int workerId = lease.getWorkerId();
+        generator.nextId();
+
+        lease.stop();
+        leases.remove(lease);
+
+        assertFalse(redisTemplate.hasKey(NAMESPACE + ":" + workerId));
+        assertEquals(generator.lastMillis(), floor(workerId));
+        assertThrows(IllegalStateException.class, generator::nextId);
+    }
+
+    @Test
+    void stopDoesNotReleaseAWorkerIdTakenByOthers() throws InterruptedException {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(MAX_AHEAD);
+        RedisWorkerIdLease lease = start(generator);
+        int workerId = lease.getWorkerId();
+        redisTemplate.opsForValue().set(NAMESPACE + ":" + workerId, "other-instance");
+        long floor = floor(workerId);
+
+        lease.stop();
+        leases.remove(lease);
+
+        assertEquals("other-instance", redisTemplate.opsForValue().get(NAMESPACE + ":" + workerId));
+        assertEquals(floor, floor(workerId));
+    }
+
+    @Test
+    void workerIdIsUnassignedBeforeStart() {
+        RedisWorkerIdLease lease = new RedisWorkerIdLease(redisTemplate, new SnowflakeIdGenerator(MAX_AHEAD), NAMESPACE, LEASE, MAX_AHEAD);
+        assertEquals(-1, lease.getWorkerId());
+        assertNull(redisTemplate.opsForHash().get(NAMESPACE + ":floor", "0"));
+    }
+
+    private RedisWorkerIdLease start(SnowflakeIdGenerator generator) throws InterruptedException {
+        RedisWorkerIdLease lease = new RedisWorkerIdLease(redisTemplate, generator, NAMESPACE, LEASE, MAX_AHEAD);
+        lease.start();
+        leases.add(lease);
+        assertNotEquals(-1, lease.getWorkerId());
+        return lease;
+    }
+
+    private static void occupyAllExcept(int free) {
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for (int i = 0; i <= SnowflakeIdGenerator.MAX_WORKER_ID; i++) {
+                    if (i != free) {
+                        operations.opsForValue().set(NAMESPACE + ":" + i, "other-instance");
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    private static long floor(int workerId) {
+        Object value = redisTemplate.opsForHash().get(NAMESPACE + ":floor", String.valueOf(workerId));
+        return value == null ? 0 : Long.parseLong(value.toString());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + LEASE * 5;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "等待超时");
+            Thread.sleep(20);
+        }
+    }
+
+    private static long millis(long id) {
+        return (id >>> (SnowflakeIdGenerator.SEQUENCE_BITS + SnowflakeIdGenerator.WORKER_ID_BITS)) + SnowflakeIdGenerator.EPOCH;
+    }
+
+    private static int workerId(long id) {
+        return (int) ((id >>> SnowflakeIdGenerator.SEQUENCE_BITS) & SnowflakeIdGenerator.MAX_WORKER_ID);
+    }
+}
@@ -0,0 +1,163 @@
+package com.atguigu.common.id;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 雪花id生成器：worker id范围、同一毫秒序列号用完、时钟回拨，用可控的时钟测试
+ */
+class SnowflakeIdGeneratorTest {
+
+    private static final long T0 = SnowflakeIdGenerator.EPOCH + 1_000_000_000L;
+
+    private static final long SEQUENCE_SIZE = 1L << SnowflakeIdGenerator.SEQUENCE_BITS;
+
+    @Test
+    void workerIdMustBeInRange() throws InterruptedException {
+        FakeClockGenerator generator = new FakeClockGenerator(2000);
+
+        assertThrows(IllegalArgumentException.class, () -> generator.assign(-1, 0, Long.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> generator.assign(SnowflakeIdGenerator.MAX_WORKER_ID + 1, 0, Long.MAX_VALUE));
+
+        generator.assign(0, 0, Long.MAX_VALUE);
+        assertEquals(0, workerId(generator.nextId()));
+        generator.assign(SnowflakeIdGenerator.MAX_WORKER_ID, 0, Long.MAX_VALUE);
+        long id = generator.nextId();
+        assertEquals(SnowflakeIdGenerator.MAX_WORKER_ID, workerId(id));
+        assertTrue(id > 0);
+    }
+
+    @Test
+    void sequenceOverflowBorrowsNextMillisecond() throws InterruptedException {
+        FakeClockGenerator generator = new FakeClockGenerator(2000);
+        generator.assign(5, 0, Long.MAX_VALUE);
+
+        // 时钟不动，连续发3毫秒的量
+        long previous = 0;
+        long first = generator.nextId();
+        for (int i = 1; i < 3 * SEQUENCE_SIZE; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous && id > first);
+            assertEquals(5, workerId(id));
+            previous = id;
+        }
+        // 时钟没动也不跳号：3毫秒的量正好连续占满(毫秒, 序列号)
+        assertEquals(T0, millis(first));
+        assertEquals(3 * SEQUENCE_SIZE - 1, (millis(previous) - millis(first)) * SEQUENCE_SIZE + sequence(previous) - sequence(first));
+
+        // 序列号用完后借用下一毫秒，从0开始
+        long[] batch = generator.nextIds((int) SEQUENCE_SIZE + 1);
+        assertTrue(batch[0] > previous);
+        for (int i = 1; i < batch.length; i++) {
+            assertTrue(batch[i] > batch[i - 1]);
+            if (sequence(batch[i]) == 0) {
+                assertEquals(millis(batch[i - 1]) + 1, millis(batch[i]));
+                assertEquals(SEQUENCE_SIZE - 1, sequence(batch[i - 1]));
+            } else {
+                assertEquals(millis(batch[i - 1]), millis(batch[i]));
+            }
+        }
+    }
+
+    @Test
+    void smallClockRollbackKeepsIdsIncreasing() throws InterruptedException {
+        FakeClockGenerator generator = new FakeClockGenerator(16);
+        generator.assign(1, 0, Long.MAX_VALUE);
+        long previous = generator.nextId();
+
+        generator.now.set(T0 - 10);
+        for (int i = 0; i < 2 * SEQUENCE_SIZE; i++) {
+            long id = generator.nextId();
+            assertTrue(id > previous);
+            previous = id;
+        }
+        assertTrue(millis(previous) > T0);
+    }
+
+    @Test
+    void clockRollbackBeyondMaxAheadWaitsForClock() throws Exception {
+        FakeClockGenerator generator = new FakeClockGenerator(16);
+        generator.assign(1, 0, Long.MAX_VALUE);
+        generator.now.set(T0 - 20);
+        long previous = 0;
+        while (previous == 0 || sequence(previous) < SEQUENCE_SIZE - 1) {
+            previous = generator.nextId();
+        }
+
+        // 下一个id要借用T0+1，领先时钟21ms，超过maxAhead，等待时钟追上
+        CompletableFuture<Long> next = CompletableFuture.supplyAsync(generator::nextId);
+        TimeUnit.MILLISECONDS.sleep(50);
+        assertFalse(next.isDone());
+
+        generator.now.set(T0 - 10);
+        long id = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> next.get());
+        assertTrue(id > previous);
+        assertEquals(T0 + 1, millis(id));
+    }
+
+    @Test
+    void clockRollbackBeyondTwiceMaxAheadThrows() throws InterruptedException {
+        FakeClockGenerator generator = new FakeClockGenerator(16);
+        generator.assign(1, 0, Long.MAX_VALUE);
+        generator.now.set(T0 - 100);
+
+        // 同一毫秒的序列号还没用完时继续发号
+        long previous = 0;
+        while (previous == 0 || sequence(previous) < SEQUENCE_SIZE - 1) {
+            previous = generator.nextId();
+        }
+        assertThrows(IllegalStateException.class, generator::nextId);
+    }
+
+    @Test
+    void expiredLeaseStopsIssuing() throws InterruptedException {
+        FakeClockGenerator generator = new FakeClockGenerator(2000);
+        assertThrows(IllegalStateException.class, generator::nextId);
+
+        generator.assign(1, 0, T0 + 10);
+        generator.nextId();
+        generator.now.set(T0 + 10);
+        assertThrows(IllegalStateException.class, generator::nextId);
+    }
+
+    @Test
+    void maxAheadMustFitOneBatch() {
+        assertThrows(IllegalArgumentException.class, () -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_BATCH / SEQUENCE_SIZE - 1));
+    }
+
+    private static long millis(long id) {
+        return (id >>> (SnowflakeIdGenerator.SEQUENCE_BITS + SnowflakeIdGenerator.WORKER_ID_BITS)) + SnowflakeIdGenerator.EPOCH;
+    }
+
+    private static long sequence(long id) {
+        return id & (SEQUENCE_SIZE - 1);
+    }
+
+    private static int workerId(long id) {
+        return (int) ((id >>> SnowflakeIdGenerator.SEQUENCE_BITS) & SnowflakeIdGenerator.MAX_WORKER_ID);
+    }
+
+    private static class FakeClockGenerator extends SnowflakeIdGenerator {
+
+        private final AtomicLong now = new AtomicLong(T0);
+
+        FakeClockGenerator(long maxAheadMillis) {
+            super(maxAheadMillis);
+        }
+
+        @Override
+        protected long clock() {
+            return now.get();
+        }
+    }
+}
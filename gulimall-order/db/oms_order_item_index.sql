@@ -0,0 +1,2 @@
+-- 我的订单页按订单号批量查询订单项
+ALTER TABLE `oms_order_item` ADD INDEX `idx_order_sn` (`order_sn`);
@@ -0,0 +1,2 @@
+-- 我的订单按(member_id, id)游标分页
+ALTER TABLE `oms_order` ADD INDEX `idx_member_id_id` (`member_id`, `id`);
@@ -0,0 +1,9 @@
+-- 订单号唯一：重复投递的秒杀订单由唯一键拒绝，逐条保存时按DuplicateKeyException识别为已经保存过
+-- 先清理重复保存的订单(保留最早的一条)和随之重复写入的订单项，再加唯一键
+DELETE o1 FROM oms_order o1
+  JOIN oms_order o2 ON o1.order_sn = o2.order_sn AND o1.id > o2.id;
+
+DELETE i1 FROM oms_order_item i1
+  JOIN oms_order_item i2 ON i1.order_sn = i2.order_sn AND i1.sku_id = i2.sku_id AND i1.id > i2.id;
+
+ALTER TABLE `oms_order` ADD UNIQUE KEY `uk_order_sn` (`order_sn`);
@@ -0,0 +1,2 @@
+-- 秒杀订单记录场次，超时关闭时按场次和商品把秒杀库存还给秒杀服务；普通订单为空
+ALTER TABLE `oms_order` ADD COLUMN `promotion_session_id` bigint(20) DEFAULT NULL COMMENT '秒杀场次id' AFTER `modify_time`;
@@ -0,0 +1,2 @@
+-- 超时订单扫描：status = 0 and id > ? order by id limit n，按(status, id)顺序扫描，create_time在索引里过滤，不用回表
+ALTER TABLE `oms_order` ADD INDEX `idx_status_id_create_time` (`status`, `id`, `create_time`);
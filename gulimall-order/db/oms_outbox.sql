@@ -0,0 +1,13 @@
+-- 订单事件发件箱：与订单在同一个本地事务中写入，由OrderOutboxRelay异步投递到rabbitmq，投递确认后删除
+CREATE TABLE `oms_outbox` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT COMMENT 'id',
+  `exchange` varchar(255) NOT NULL COMMENT '交换机',
+  `routing_key` varchar(255) NOT NULL COMMENT '路由键',
+  `type_id` varchar(255) DEFAULT NULL COMMENT '消息体类型(__TypeId__)',
+  `payload` text NOT NULL COMMENT '消息体json',
+  `claim_token` varchar(64) DEFAULT NULL COMMENT '领取批次',
+  `lease_until` datetime(3) DEFAULT NULL COMMENT '领取有效期，过期后可被重新领取',
+  `create_time` datetime(3) NOT NULL COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_claim_token` (`claim_token`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='订单事件发件箱';
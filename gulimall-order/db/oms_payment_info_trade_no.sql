@@ -0,0 +1,5 @@
+-- 支付宝异步通知按交易号去重：先清理重复的交易流水(保留最早的一条)，再加唯一键
+DELETE p1 FROM oms_payment_info p1
+  JOIN oms_payment_info p2 ON p1.alipay_trade_no = p2.alipay_trade_no AND p1.id > p2.id;
+
+ALTER TABLE `oms_payment_info` ADD UNIQUE KEY `uk_alipay_trade_no` (`alipay_trade_no`);
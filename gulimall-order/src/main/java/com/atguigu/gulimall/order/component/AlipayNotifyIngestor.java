@@ -0,0 +1,226 @@
+package com.atguigu.gulimall.order.component;
+
+import com.alipay.api.internal.util.AlipaySignature;
+import com.atguigu.gulimall.order.config.AlipayTemplate;
+import com.atguigu.gulimall.order.config.PayNotifyProperties;
+import com.atguigu.gulimall.order.service.OrderService;
+import com.atguigu.gulimall.order.vo.PayAsyncVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 支付宝异步通知的接收流水线
+ * 1. 所有通知先在独立线程池中验签，验签不通过的直接返回error，不会读到本机的去重结果，也不会占用并发通知的位置
+ * 2. 验签通过后，本机已经落库过的交易(交易号+状态相同)直接返回success，不再访问数据库
+ * 3. 同一笔交易并发到达、验签通过的重复通知共用一个结果，只落库一次
+ * 4. 需要落库的通知由落库线程凑批，一个事务写入交易流水并修改订单状态
+ * 5. 落库成功后才返回success；队列满、验签失败、落库失败都返回error，由支付宝按它的策略重试
+ * 本机的去重只是减少重试风暴的开销，跨节点的幂等由oms_payment_info上交易号的唯一键和订单状态的条件更新保证
+ */
+@Slf4j
+@Component
+public class AlipayNotifyIngestor {
+
+    public static final String SUCCESS = "success";
+
+    public static final String ERROR = "error";
+
+    @Autowired
+    OrderService orderService;
+
+    @Autowired
+    AlipayTemplate alipayTemplate;
+
+    @Autowired
+    PayNotifyProperties properties;
+
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inflight = new ConcurrentHashMap<>();
+
+    private Map<String, String> processed;
+
+    private ThreadPoolExecutor verifyPool;
+
+    private BlockingQueue<PendingNotify> pending;
+
+    private Thread writer;
+
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void start() {
+        int cacheSize = properties.getDedupeCacheSize();
+        processed = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        });
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        verifyPool = new ThreadPoolExecutor(properties.getVerifyThreads(), properties.getVerifyThreads(),
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(properties.getQueueCapacity()),
+                r -> {
+                    Thread thread = new Thread(r, "order-pay-verify-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        pending = new LinkedBlockingQueue<>(properties.getQueueCapacity());
+
+        writer = new Thread(this::writeLoop, "order-pay-notify-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        verifyPool.shutdown();
+        verifyPool.awaitTermination(5, TimeUnit.SECONDS);
+        running = false;
+        writer.interrupt();
+        writer.join(5000);
+        // 没来得及落库的通知返回error，支付宝会重试
+        List<PendingNotify> rest = new ArrayList<>();
+        pending.drainTo(rest);
+        rest.forEach(notify -> finish(notify, ERROR));
+    }
+
+    /**
+     * 接收一条通知，返回给支付宝的应答在落库(或者失败)后完成
+     *
+     * @param params 通知的全部参数，用于验签
+     */
+    public CompletableFuture<String> ingest(Map<String, String> params, PayAsyncVo vo) {
+        String key = vo.getTrade_no() + ":" + vo.getTrade_status();
+        PendingNotify notify = new PendingNotify(key, vo, new CompletableFuture<>());
+        try {
+            verifyPool.execute(() -> verify(params, notify));
+        } catch (RejectedExecutionException e) {
+            log.warn("支付通知验签队列已满，交易号{}稍后由支付宝重试", vo.getTrade_no());
+            notify.result.complete(ERROR);
+        }
+        return notify.result;
+    }
+
+    private void verify(Map<String, String> params, PendingNotify notify) {
+        try {
+            boolean signVerified = AlipaySignature.rsaCheckV1(params, alipayTemplate.getAlipay_public_key(),
+                    alipayTemplate.getCharset(), alipayTemplate.getSign_type());
+            if (!signVerified) {
+                log.warn("支付通知验签失败，交易号{}", notify.vo.getTrade_no());
+                notify.result.complete(ERROR);
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("支付通知验签出错，交易号{}", notify.vo.getTrade_no(), e);
+            notify.result.complete(ERROR);
+            return;
+        }
+
+        // 以下只有验签通过的通知才能走到
+        if (String.valueOf(notify.vo.getTrade_status()).equals(processed.get(notify.vo.getTrade_no()))) {
+            notify.result.complete(SUCCESS);
+            return;
+        }
+        CompletableFuture<String> existing = inflight.putIfAbsent(notify.key, notify.result);
+        if (existing != null) {
+            existing.whenComplete((response, e) -> notify.result.complete(e == null ? response : ERROR));
+            return;
+        }
+        if (!running || !pending.offer(notify)) {
+            log.warn("支付通知落库队列已满，交易号{}稍后由支付宝重试", notify.vo.getTrade_no());
+            finish(notify, ERROR);
+        }
+    }
+
+    private void writeLoop() {
+        int batchSize = properties.getBatchSize();
+        List<PendingNotify> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                PendingNotify first = pending.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 凑批：最多等lingerMs，凑够batchSize立即落库
+                long deadline = System.currentTimeMillis() + properties.getLingerMs();
+                while (batch.size() < batchSize) {
+                    pending.drainTo(batch, batchSize - batch.size());
+                    long wait = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || wait <= 0) {
+                        break;
+                    }
+                    PendingNotify next = pending.poll(wait, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.forEach(notify -> finish(notify, ERROR));
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingNotify> batch) {
+        List<PayAsyncVo> vos = new ArrayList<>(batch.size());
+        batch.forEach(notify -> vos.add(notify.vo));
+        try {
+            orderService.handlePayResults(vos);
+        } catch (Exception e) {
+            log.error("支付通知落库失败，{}条通知等待支付宝重试", batch.size(), e);
+            return;
+        }
+        for (PendingNotify notify : batch) {
+            processed.put(notify.vo.getTrade_no(), String.valueOf(notify.vo.getTrade_status()));
+            finish(notify, SUCCESS);
+        }
+    }
+
+    /**
+     * 完成应答，已经完成的重复调用没有影响
+     */
+    private void finish(PendingNotify notify, String response) {
+        inflight.remove(notify.key, notify.result);
+        notify.result.complete(response);
+    }
+
+    private static class PendingNotify {
+
+        private final String key;
+
+        private final PayAsyncVo vo;
+
+        private final CompletableFuture<String> result;
+
+        PendingNotify(String key, PayAsyncVo vo, CompletableFuture<String> result) {
+            this.key = key;
+            this.vo = vo;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.atguigu.gulimall.order.component;
+
+import com.atguigu.common.vo.MemberRespVo;
+import com.atguigu.gulimall.order.interceptor.LoginUserInterceptor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 并行远程调用
+ * 1. 提交时捕获当前请求的RequestAttributes和登录用户，在线程池中执行前设置、执行后还原，调用方不需要在每个lambda里复制
+ * 2. 每个调用有自己的超时时间，超时或者异常时返回降级值，页面的等待时间有上限
+ * 注意：超时只是不再等待结果，阻塞中的feign调用仍然由feign自己的读超时结束
+ */
+@Slf4j
+@Component
+public class ContextFanOut {
+
+    @Autowired
+    ThreadPoolExecutor executor;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "order-fan-out-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * 异步执行supplier，timeoutMillis内没有结果或者出错时返回fallback
+     */
+    public <T> CompletableFuture<T> supply(String name, Supplier<T> supplier, long timeoutMillis, T fallback) {
+        return supply(name, RequestContextHolder.getRequestAttributes(), LoginUserInterceptor.loginUser.get(),
+                supplier, timeoutMillis, fallback);
+    }
+
+    /**
+     * 上游一完成就异步执行下一步；上游降级(返回fallback)时照常执行，由fn自己处理
+     */
+    public <T, R> CompletableFuture<R> then(String name, CompletableFuture<T> upstream, Function<T, R> fn, long timeoutMillis, R fallback) {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        MemberRespVo loginUser = LoginUserInterceptor.loginUser.get();
+        return upstream.thenCompose(value -> supply(name, requestAttributes, loginUser, () -> fn.apply(value), timeoutMillis, fallback));
+    }
+
+    private <T> CompletableFuture<T> supply(String name, RequestAttributes requestAttributes, MemberRespVo loginUser,
+                                            Supplier<T> supplier, long timeoutMillis, T fallback) {
+        CompletableFuture<T> call;
+        try {
+            call = CompletableFuture.supplyAsync(() -> {
+                RequestAttributes previousAttributes = RequestContextHolder.getRequestAttributes();
+                MemberRespVo previousUser = LoginUserInterceptor.loginUser.get();
+                RequestContextHolder.setRequestAttributes(requestAttributes);
+                LoginUserInterceptor.loginUser.set(loginUser);
+                try {
+                    return supplier.get();
+                } finally {
+                    RequestContextHolder.setRequestAttributes(previousAttributes);
+                    LoginUserInterceptor.loginUser.set(previousUser);
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            log.warn("{}被线程池拒绝，使用降级结果", name);
+            return CompletableFuture.completedFuture(fallback);
+        }
+        return withFallback(name, call, timeoutMillis, fallback);
+    }
+
+    private <T> CompletableFuture<T> withFallback(String name, CompletableFuture<T> call, long timeoutMillis, T fallback) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        timer.schedule(() -> {
+            if (result.complete(fallback)) {
+                log.warn("{}超过{}ms没有返回，使用降级结果", name, timeoutMillis);
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        call.whenComplete((value, e) -> {
+            if (e != null) {
+                if (result.complete(fallback)) {
+                    log.warn("{}调用失败，使用降级结果", name, e);
+                }
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+}
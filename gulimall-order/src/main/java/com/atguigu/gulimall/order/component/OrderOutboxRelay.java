@@ -0,0 +1,144 @@
+package com.atguigu.gulimall.order.component;
+
+import com.atguigu.gulimall.order.config.OrderOutboxProperties;
+import com.atguigu.gulimall.order.entity.OutboxEventEntity;
+import com.atguigu.gulimall.order.service.OutboxEventService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单事件发件箱的投递线程
+ * 1. 按id顺序领取一批事件，整批发送后等待broker的publisher confirm
+ * 2. 确认成功的事件从发件箱删除；没有确认的等领取过期后重新投递(至少一次，消费端需要幂等)
+ * 3. 多个订单节点可以同时投递，领取是一条update，同一条事件同一时间只会被一个节点领取
+ */
+@Slf4j
+@Component
+public class OrderOutboxRelay {
+
+    @Autowired
+    OutboxEventService outboxEventService;
+
+    @Autowired
+    RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    OrderOutboxProperties properties;
+
+    private final Object signal = new Object();
+
+    private boolean signalled;
+
+    private Thread relay;
+
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void start() {
+        relay = new Thread(this::relayLoop, "order-outbox-relay");
+        relay.setDaemon(true);
+        relay.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        relay.interrupt();
+        relay.join(properties.getConfirmTimeout());
+    }
+
+    /**
+     * 有新事件提交，唤醒投递线程
+     */
+    public void wakeup() {
+        synchronized (signal) {
+            signalled = true;
+            signal.notify();
+        }
+    }
+
+    private void relayLoop() {
+        while (running) {
+            try {
+                List<OutboxEventEntity> batch = outboxEventService.claim(properties.getBatchSize(), properties.getLease());
+                if (batch.isEmpty()) {
+                    synchronized (signal) {
+                        if (!signalled) {
+                            signal.wait(properties.getPollInterval());
+                        }
+                        signalled = false;
+                    }
+                    continue;
+                }
+                List<Long> confirmed = send(batch);
+                if (!confirmed.isEmpty()) {
+                    outboxEventService.removeByIds(confirmed);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("订单事件投递失败", e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    /**
+     * 整批发送，再统一等待确认，返回broker确认收到的事件id
+     */
+    private List<Long> send(List<OutboxEventEntity> batch) throws InterruptedException {
+        List<CorrelationData> correlations = new ArrayList<>(batch.size());
+        for (OutboxEventEntity event : batch) {
+            MessageProperties messageProperties = new MessageProperties();
+            messageProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+            messageProperties.setContentEncoding(StandardCharsets.UTF_8.name());
+            if (event.getTypeId() != null) {
+                messageProperties.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, event.getTypeId());
+            }
+            Message message = new Message(event.getPayload().getBytes(StandardCharsets.UTF_8), messageProperties);
+            CorrelationData correlationData = new CorrelationData(event.getId().toString());
+            rabbitTemplate.send(event.getExchange(), event.getRoutingKey(), message, correlationData);
+            correlations.add(correlationData);
+        }
+
+        List<Long> confirmed = new ArrayList<>(batch.size());
+        long deadline = System.currentTimeMillis() + properties.getConfirmTimeout();
+        for (int i = 0; i < batch.size(); i++) {
+            try {
+                long wait = Math.max(0, deadline - System.currentTimeMillis());
+                if (correlations.get(i).getFuture().get(wait, TimeUnit.MILLISECONDS).isAck()) {
+                    confirmed.add(batch.get(i).getId());
+                }
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                // 超时或者nack，等领取过期后重新投递
+                log.warn("订单事件{}没有得到broker确认", batch.get(i).getId());
+            }
+        }
+        return confirmed;
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(properties.getPollInterval());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.atguigu.gulimall.order.component;
+
+import com.atguigu.gulimall.order.config.OrderTimeoutProperties;
+import com.atguigu.gulimall.order.service.OrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单超时自动关闭，代替固定60s TTL的延时队列
+ * 1. 订单保存成功后按自己的到期时间放入本地分层时间轮，O(1)，不再每单发一条延时消息
+ * 2. 时钟线程每格推进时间轮，到期的订单id进入关单队列；关单线程整批调用closeOrders
+ * 3. 订单表本身就是持久化存储：节点重启或关单失败丢掉的定时任务，由兜底扫描按create_time找出超时未关闭的订单补关，
+ *    多个节点用redis的key保证同一个扫描周期只有一个节点扫描
+ * 4. 秒杀订单由消费者批量插入，不登记时间轮，只由兜底扫描关闭(约closeAfter + sweepInterval)，
+ *    关闭后发order.release.seckill消息，由秒杀服务归还redis中的秒杀库存
+ */
+@Slf4j
+@Component
+public class OrderTimeoutScheduler {
+
+    private static final String SWEEP_LOCK = "order:timeout:sweep:lock";
+
+    @Autowired
+    OrderService orderService;
+
+    @Autowired
+    StringRedisTemplate redisTemplate;
+
+    @Autowired
+    OrderTimeoutProperties properties;
+
+    private TimingWheel<Long> wheel;
+
+    private final BlockingQueue<Long> expired = new LinkedBlockingQueue<>();
+
+    private Thread ticker;
+
+    private Thread closer;
+
+    private volatile boolean running = true;
+
+    private long nextSweep;
+
+    @PostConstruct
+    public void start() {
+        wheel = new TimingWheel<>(properties.getTickMs(), properties.getWheelSize(), System.currentTimeMillis());
+        nextSweep = System.currentTimeMillis() + properties.getSweepInterval();
+        ticker = new Thread(this::tickLoop, "order-timeout-ticker");
+        ticker.setDaemon(true);
+        ticker.start();
+        closer = new Thread(this::closeLoop, "order-timeout-closer");
+        closer.setDaemon(true);
+        closer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        ticker.interrupt();
+        closer.interrupt();
+        closer.join(properties.getTickMs());
+    }
+
+    /**
+     * 登记订单的超时时间，到期后自动关闭
+     */
+    public void schedule(Long orderId, Date createTime) {
+        long deadline = createTime.getTime() + properties.getCloseAfter();
+        synchronized (this) {
+            wheel.add(orderId, deadline);
+        }
+    }
+
+    private void tickLoop() {
+        while (running) {
+            try {
+                Thread.sleep(properties.getTickMs());
+                synchronized (this) {
+                    wheel.advance(System.currentTimeMillis(), expired::add);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void closeLoop() {
+        List<Long> batch = new ArrayList<>(properties.getBatchSize());
+        while (running) {
+            try {
+                Long first = expired.poll(properties.getTickMs(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    expired.drainTo(batch, properties.getBatchSize() - 1);
+                    close(batch);
+                }
+                if (System.currentTimeMillis() >= nextSweep) {
+                    nextSweep = System.currentTimeMillis() + properties.getSweepInterval();
+                    sweep();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("超时订单兜底扫描失败", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void close(List<Long> orderIds) {
+        try {
+            orderService.closeOrders(orderIds);
+        } catch (Exception e) {
+            // 没关掉的订单由兜底扫描补关
+            log.error("批量关闭{}个超时订单失败", orderIds.size(), e);
+        }
+    }
+
+    /**
+     * 按id游标分批扫描超时时间再过一个扫描周期仍未关闭的订单
+     */
+    private void sweep() {
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(SWEEP_LOCK, "1", properties.getSweepInterval(), TimeUnit.MILLISECONDS);
+        if (locked == null || !locked) {
+            return;
+        }
+        Date createdBefore = new Date(System.currentTimeMillis() - properties.getCloseAfter() - properties.getSweepInterval());
+        Long lastId = 0L;
+        int total = 0;
+        List<Long> orderIds;
+        do {
+            orderIds = orderService.listTimeoutOrderIds(createdBefore, lastId, properties.getBatchSize());
+            if (!orderIds.isEmpty()) {
+                close(orderIds);
+                lastId = orderIds.get(orderIds.size() - 1);
+                total += orderIds.size();
+            }
+        } while (orderIds.size() == properties.getBatchSize());
+        if (total > 0) {
+            log.info("兜底扫描关闭了{}个超时订单", total);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.atguigu.gulimall.order.component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 分层时间轮
+ * 1. 第0层每格tickMs，一圈wheelSize格；第i层每格的跨度是第i-1层一整圈，层数按需增加
+ * 2. 添加任务O(1)：按到期时间直接算出所在的层和格子
+ * 3. 时钟每走一格只处理当前格子；走到上层格子的边界时，把上层这一格的任务重新放入下层(降级)，到第0层的格子即到期
+ * 4. 到期时间向上对齐到tickMs，任务不会提前触发，最多延迟一格
+ * 非线程安全，由调用方加锁
+ */
+public class TimingWheel<T> {
+
+    private final long tickMs;
+
+    private final int wheelSize;
+
+    private final List<ArrayDeque<Entry<T>>[]> levels = new ArrayList<>();
+
+    /**
+     * 已经走到的时间，tickMs对齐
+     */
+    private long currentTime;
+
+    /**
+     * 添加时已经到期的任务，下一次advance时触发
+     */
+    private final List<T> due = new ArrayList<>();
+
+    private int size;
+
+    public TimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.currentTime = startMs - startMs % tickMs;
+    }
+
+    public void add(T task, long deadline) {
+        size++;
+        place(new Entry<>(task, deadline + tickMs - 1));
+    }
+
+    /**
+     * 时钟走到now，依次回调所有到期的任务
+     */
+    public void advance(long now, Consumer<T> expired) {
+        fire(due, expired);
+        while (currentTime + tickMs <= now) {
+            currentTime += tickMs;
+            // 从第1层往上检查：走到某层格子的边界时把这一层当前格子的任务重新放入更低的层；
+            // 上层的格子边界一定也是下层的边界，遇到第一个不在边界上的层就可以停止。降级完成后再触发第0层当前格子
+            long tick = tickMs;
+            for (int level = 1; level < levels.size(); level++) {
+                tick *= wheelSize;
+                if (currentTime % tick != 0) {
+                    break;
+                }
+                ArrayDeque<Entry<T>> slot = levels.get(level)[slotIndex(currentTime, tick)];
+                while (slot != null && !slot.isEmpty()) {
+                    place(slot.poll());
+                }
+            }
+            ArrayDeque<Entry<T>> slot = levels.isEmpty() ? null : levels.get(0)[slotIndex(currentTime, tickMs)];
+            while (slot != null && !slot.isEmpty()) {
+                size--;
+                expired.accept(slot.poll().task);
+            }
+            fire(due, expired);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void fire(List<T> tasks, Consumer<T> expired) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        size -= tasks.size();
+        tasks.forEach(expired);
+        tasks.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void place(Entry<T> entry) {
+        if (entry.deadline < currentTime + tickMs) {
+            due.add(entry.task);
+            return;
+        }
+        long tick = tickMs;
+        for (int level = 0; ; level++) {
+            long interval = tick * wheelSize;
+            // 这一层当前格子的起点
+            long levelTime = currentTime - currentTime % tick;
+            if (entry.deadline < levelTime + interval) {
+                if (levels.size() <= level) {
+                    levels.add(new ArrayDeque[wheelSize]);
+                }
+                ArrayDeque<Entry<T>>[] slots = levels.get(level);
+                int index = slotIndex(entry.deadline, tick);
+                if (slots[index] == null) {
+                    slots[index] = new ArrayDeque<>();
+                }
+                slots[index].add(entry);
+                return;
+            }
+            if (levels.size() <= level) {
+                levels.add(new ArrayDeque[wheelSize]);
+            }
+            tick = interval;
+        }
+    }
+
+    private int slotIndex(long time, long tick) {
+        return (int) ((time / tick) % wheelSize);
+    }
+
+    private static class Entry<T> {
+
+        private final T task;
+
+        private final long deadline;
+
+        private Entry(T task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+}
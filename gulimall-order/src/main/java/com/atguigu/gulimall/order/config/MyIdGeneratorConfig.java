@@ -0,0 +1,24 @@
+package com.atguigu.gulimall.order.config;
+
+import com.atguigu.common.id.RedisWorkerIdLease;
+import com.atguigu.common.id.SnowflakeIdGenerator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 订单号生成器，订单服务和秒杀服务共用redis里的worker id，生成的订单号不会重复
+ */
+@Configuration
+public class MyIdGeneratorConfig {
+
+    @Bean
+    public SnowflakeIdGenerator snowflakeIdGenerator() {
+        return new SnowflakeIdGenerator();
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public RedisWorkerIdLease workerIdLease(StringRedisTemplate redisTemplate, SnowflakeIdGenerator snowflakeIdGenerator) {
+        return new RedisWorkerIdLease(redisTemplate, snowflakeIdGenerator);
+    }
+}
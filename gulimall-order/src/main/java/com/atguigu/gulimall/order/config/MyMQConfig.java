@@ -1,7 +1,6 @@
 package com.atguigu.gulimall.order.config;
 
 import org.springframework.amqp.core.*;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -16,15 +15,10 @@ import java.util.Map;
 @Configuration
 public class MyMQConfig {
 
-    @Bean
-    public Queue orderDelayQueue() {
-        Map<String, Object> arguments = new HashMap<>();
-        arguments.put("x-dead-letter-exchange", "order-event-exchange");
-        arguments.put("x-dead-letter-routing-key", "order.release.order");
-        arguments.put("x-message-ttl", 60000);
-        return new Queue("order.delay.queue", true, false, false, arguments);
-    }
-
+    /**
+     * 订单超时关闭改由OrderTimeoutScheduler的时间轮处理，不再声明固定TTL的order.delay.queue；
+     * 释放队列保留，用来消费升级前已经进入延时队列的订单
+     */
     @Bean
     public Queue orderReleaseOrderQueue() {
         return new Queue("order.release.order.queue", true, false, false);
@@ -35,15 +29,6 @@ public class MyMQConfig {
         return new TopicExchange("order-event-exchange", true, false);
     }
 
-    @Bean
-    public Binding orderCreateOrderBinding() {
-        return new Binding("order.delay.queue",
-                Binding.DestinationType.QUEUE,
-                "order-event-exchange",
-                "order.create.order",
-                null);
-    }
-
     @Bean
     public Binding orderReleaseOrderBinding() {
         return new Binding("order.release.order.queue",
@@ -62,9 +47,21 @@ public class MyMQConfig {
                 null);
     }
 
+    /**
+     * 无法解析或者数据有误被拒绝的秒杀订单消息转到死信队列，人工排查后可以重新投递
+     * 注意：已经存在的队列不能修改参数，上线前需要先删除旧的order.seckill.order.queue
+     */
     @Bean
     public Queue orderSeckillOrderQueue() {
-        return new Queue("order.seckill.order.queue", true, false, false, null);
+        Map<String, Object> args = new HashMap<>();
+        args.put("x-dead-letter-exchange", "order-event-exchange");
+        args.put("x-dead-letter-routing-key", "order.seckill.order.dead");
+        return new Queue("order.seckill.order.queue", true, false, false, args);
+    }
+
+    @Bean
+    public Queue orderSeckillOrderDeadQueue() {
+        return new Queue("order.seckill.order.dead.queue", true, false, false);
     }
 
     @Bean
@@ -77,15 +74,12 @@ public class MyMQConfig {
         );
     }
 
-    @RabbitListener(queues = "order.release.order.queue")
-    public void handle1(Message message) {
-
-    }
-
-    @RabbitListener(queues = "order.delay.queue\"")
-    public void handle2(Message message) {
-
+    @Bean
+    public Binding orderSeckillOrderDeadBinding() {
+        return new Binding("order.seckill.order.dead.queue",
+                Binding.DestinationType.QUEUE,
+                "order-event-exchange",
+                "order.seckill.order.dead",
+                null);
     }
-
-
 }
@@ -1,11 +1,15 @@
 package com.atguigu.gulimall.order.config;
 
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -14,6 +18,7 @@ import org.springframework.context.annotation.Primary;
  * @author: maruimin
  * @date: 2020/5/30 16:14
  */
+@Slf4j
 @Configuration
 public class MyRabbitConfig {
 
@@ -28,7 +33,7 @@ public class MyRabbitConfig {
     @Primary
     @Bean
     public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
-        RabbitTemplate rabbitTemplate = new RabbitTemplate();
+        RabbitTemplate rabbitTemplate = new RabbitTemplate(connectionFactory);
         this.rabbitTemplate = rabbitTemplate;
         rabbitTemplate.setMessageConverter(messageConverter());
         initRabbitTemplate();
@@ -45,6 +50,22 @@ public class MyRabbitConfig {
         return new Jackson2JsonMessageConverter();
     }
 
+    /**
+     * 秒杀订单批量消费: 一次最多取batchSize条消息，整批交给监听方法
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory seckillBatchContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                             ConnectionFactory connectionFactory,
+                                                                             @Value("${gulimall.order.seckill.batch-size:100}") Integer batchSize) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setPrefetchCount(batchSize);
+        return factory;
+    }
+
     /**
      * 定制RabbitTemplate
      * 1. broker收到消息的回调
@@ -66,7 +87,8 @@ public class MyRabbitConfig {
         rabbitTemplate.setConfirmCallback(new RabbitTemplate.ConfirmCallback() {
             @Override
             public void confirm(CorrelationData correlationData, boolean b, String s) {
-                System.out.println(correlationData + "-" + b + ":" + s);
+                // 发件箱的每条消息都带CorrelationData，结果由OrderOutboxRelay处理，这里只留调试日志
+                log.debug("消息确认: {}-{}:{}", correlationData, b, s);
             }
         });
 
@@ -0,0 +1,37 @@
+package com.atguigu.gulimall.order.config;
+
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties(prefix = "gulimall.order.confirm")
+@Component
+@Data
+public class OrderConfirmProperties {
+
+    /**
+     * 查询收货地址的超时时间(毫秒)
+     */
+    private Long addressTimeout = 500L;
+
+    /**
+     * 查询购物车的超时时间(毫秒)
+     */
+    private Long cartTimeout = 800L;
+
+    /**
+     * 查询库存的超时时间(毫秒)，从拿到购物车开始计算
+     */
+    private Long stockTimeout = 500L;
+
+    /**
+     * 下单时查询运费和收货地址的超时时间(毫秒)
+     */
+    private Long fareTimeout = 1000L;
+
+    /**
+     * 下单时查询购物车和商品spu信息的超时时间(毫秒)，包含两次串行的远程调用
+     */
+    private Long orderItemsTimeout = 2000L;
+}
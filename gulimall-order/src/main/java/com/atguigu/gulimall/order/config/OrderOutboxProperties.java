@@ -0,0 +1,32 @@
+package com.atguigu.gulimall.order.config;
+
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties(prefix = "gulimall.order.outbox")
+@Component
+@Data
+public class OrderOutboxProperties {
+
+    /**
+     * 每批投递的最大消息数
+     */
+    private Integer batchSize = 200;
+
+    /**
+     * 等待broker确认一批消息的超时时间(毫秒)
+     */
+    private Long confirmTimeout = 5000L;
+
+    /**
+     * 领取一批消息后的独占时间(毫秒)，超时没有删除的消息会被重新领取投递
+     */
+    private Long lease = 30000L;
+
+    /**
+     * 没有新消息时的轮询间隔(毫秒)
+     */
+    private Long pollInterval = 1000L;
+}
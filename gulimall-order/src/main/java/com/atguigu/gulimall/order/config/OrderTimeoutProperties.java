@@ -0,0 +1,37 @@
+package com.atguigu.gulimall.order.config;
+
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties(prefix = "gulimall.order.timeout")
+@Component
+@Data
+public class OrderTimeoutProperties {
+
+    /**
+     * 订单创建后多久未支付自动关闭(毫秒)，要小于库存自动解锁的延时
+     */
+    private Long closeAfter = 60000L;
+
+    /**
+     * 时间轮每格的跨度(毫秒)，也是关单的精度
+     */
+    private Long tickMs = 1000L;
+
+    /**
+     * 时间轮每层的格子数
+     */
+    private Integer wheelSize = 512;
+
+    /**
+     * 每批关闭的最大订单数
+     */
+    private Integer batchSize = 500;
+
+    /**
+     * 兜底扫描的间隔(毫秒)：关闭超时后仍未关闭的订单(节点重启、关单失败)
+     */
+    private Long sweepInterval = 60000L;
+}
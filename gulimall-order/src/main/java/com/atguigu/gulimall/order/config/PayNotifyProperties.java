@@ -0,0 +1,37 @@
+package com.atguigu.gulimall.order.config;
+
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties(prefix = "gulimall.order.pay-notify")
+@Component
+@Data
+public class PayNotifyProperties {
+
+    /**
+     * 验签线程数，验签是RSA运算，独立线程池避免占用业务线程池
+     */
+    private Integer verifyThreads = 4;
+
+    /**
+     * 等待验签和等待落库的通知上限，超过时直接返回失败让支付宝稍后重试
+     */
+    private Integer queueCapacity = 2000;
+
+    /**
+     * 每批落库的最大通知数
+     */
+    private Integer batchSize = 200;
+
+    /**
+     * 凑批的最长等待时间(毫秒)
+     */
+    private Long lingerMs = 20L;
+
+    /**
+     * 本机记住的已落库交易数，重试的通知命中后不再验签和访问数据库
+     */
+    private Integer dedupeCacheSize = 10000;
+}
@@ -4,10 +4,12 @@ import com.atguigu.common.utils.PageUtils;
 import com.atguigu.common.utils.R;
 import com.atguigu.gulimall.order.entity.OrderEntity;
 import com.atguigu.gulimall.order.service.OrderService;
+import com.atguigu.gulimall.order.vo.OrderHistoryPageVo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 
@@ -30,6 +32,15 @@ public class OrderController {
         return R.ok().setData(orderEntity);
     }
 
+    /**
+     * 批量查询订单状态，库存服务批量释放库存时使用
+     */
+    @PostMapping("/status/batch")
+    public R listOrderStatus(@RequestBody List<String> orderSns) {
+        Map<String, Integer> statuses = orderService.getOrderStatusBySns(orderSns);
+        return R.ok().setData(statuses);
+    }
+
     /**
      * 列表
      */
@@ -41,6 +52,17 @@ public class OrderController {
         return R.ok().put("page", page);
     }
 
+    /**
+     * 当前会员的订单列表，游标分页：第一页不传lastId，之后传上一页返回的nextCursor
+     */
+    @GetMapping("/history")
+    public R history(@RequestParam(value = "lastId", required = false) Long lastId,
+                     @RequestParam(value = "limit", required = false) Integer limit) {
+        OrderHistoryPageVo page = orderService.queryHistory(lastId, limit);
+
+        return R.ok().setData(page);
+    }
+
     /**
      * 查询当前登录用户的所有订单
      *
@@ -1,10 +1,13 @@
 package com.atguigu.gulimall.order.dao;
 
 import com.atguigu.gulimall.order.entity.OrderEntity;
+import com.atguigu.gulimall.order.vo.OrderHistoryVo;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.List;
+
 /**
  * 订单
  * 
@@ -16,4 +19,21 @@ import org.apache.ibatis.annotations.Param;
 public interface OrderDao extends BaseMapper<OrderEntity> {
 
     void updateOrderStatus(@Param("outTradeNo") String outTradeNo, @Param("code") Integer code);
+
+    void insertBatch(@Param("orders") List<OrderEntity> orders);
+
+    /**
+     * 会员的订单按id倒序游标分页，lastId为空时查第一页，走(member_id, id)索引
+     */
+    List<OrderHistoryVo> selectHistory(@Param("memberId") Long memberId, @Param("lastId") Long lastId, @Param("limit") int limit);
+
+    /**
+     * 把ids中状态仍为fromStatus的订单改为toStatus
+     */
+    int updateStatusBatch(@Param("ids") List<Long> ids, @Param("fromStatus") Integer fromStatus, @Param("toStatus") Integer toStatus);
+
+    /**
+     * 把订单号在orderSns中、状态仍为fromStatus的订单改为toStatus，返回实际修改的行数
+     */
+    int updateStatusBySns(@Param("orderSns") List<String> orderSns, @Param("fromStatus") Integer fromStatus, @Param("toStatus") Integer toStatus);
 }
@@ -1,8 +1,13 @@
 package com.atguigu.gulimall.order.dao;
 
 import com.atguigu.gulimall.order.entity.OrderItemEntity;
+import com.atguigu.gulimall.order.vo.OrderHistoryItemVo;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * 订单项信息
@@ -13,5 +18,16 @@ import org.apache.ibatis.annotations.Mapper;
  */
 @Mapper
 public interface OrderItemDao extends BaseMapper<OrderItemEntity> {
-	
+
+    void insertBatch(@Param("items") List<OrderItemEntity> items);
+
+    /**
+     * 一次查出多个订单的订单项，走order_sn索引
+     */
+    List<OrderItemEntity> selectByOrderSns(@Param("orderSns") Collection<String> orderSns);
+
+    /**
+     * 我的订单列表用的订单项，只查展示需要的列
+     */
+    List<OrderHistoryItemVo> selectHistoryItems(@Param("orderSns") Collection<String> orderSns);
 }
@@ -0,0 +1,24 @@
+package com.atguigu.gulimall.order.dao;
+
+import com.atguigu.gulimall.order.entity.OutboxEventEntity;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 订单事件发件箱
+ */
+@Mapper
+public interface OutboxEventDao extends BaseMapper<OutboxEventEntity> {
+
+    /**
+     * 按id顺序领取最多limit条没有被领取(或领取已过期)的事件
+     */
+    int claim(@Param("claimToken") String claimToken, @Param("leaseUntil") Date leaseUntil,
+              @Param("now") Date now, @Param("limit") int limit);
+
+    List<OutboxEventEntity> selectClaimed(@Param("claimToken") String claimToken);
+}
@@ -3,6 +3,9 @@ package com.atguigu.gulimall.order.dao;
 import com.atguigu.gulimall.order.entity.PaymentInfoEntity;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * 支付信息表
@@ -13,5 +16,9 @@ import org.apache.ibatis.annotations.Mapper;
  */
 @Mapper
 public interface PaymentInfoDao extends BaseMapper<PaymentInfoEntity> {
-	
+
+    /**
+     * 按支付宝交易号批量插入，已存在的交易只更新支付状态
+     */
+    int upsertBatch(@Param("payments") List<PaymentInfoEntity> payments);
 }
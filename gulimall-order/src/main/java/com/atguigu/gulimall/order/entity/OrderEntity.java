@@ -192,6 +192,10 @@ public class OrderEntity implements Serializable {
      * 修改时间
      */
     private Date modifyTime;
+    /**
+     * 秒杀场次id，普通订单为空
+     */
+    private Long promotionSessionId;
 
     @TableField(exist = false)
     private List<OrderItemEntity> itemEntities;
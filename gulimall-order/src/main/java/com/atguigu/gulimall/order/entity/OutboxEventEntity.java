@@ -0,0 +1,52 @@
+package com.atguigu.gulimall.order.entity;
+
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+
+import java.io.Serializable;
+import java.util.Date;
+import lombok.Data;
+
+/**
+ * 订单事件发件箱
+ */
+@Data
+@TableName("oms_outbox")
+public class OutboxEventEntity implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * id，投递顺序
+	 */
+	@TableId
+	private Long id;
+	/**
+	 * 交换机
+	 */
+	private String exchange;
+	/**
+	 * 路由键
+	 */
+	private String routingKey;
+	/**
+	 * 消息体类型(__TypeId__)
+	 */
+	private String typeId;
+	/**
+	 * 消息体json
+	 */
+	private String payload;
+	/**
+	 * 领取批次
+	 */
+	private String claimToken;
+	/**
+	 * 领取有效期，过期后可被重新领取
+	 */
+	private Date leaseUntil;
+	/**
+	 * 创建时间
+	 */
+	private Date createTime;
+
+}
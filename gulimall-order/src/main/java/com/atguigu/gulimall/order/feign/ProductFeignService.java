@@ -4,6 +4,10 @@ import com.atguigu.common.utils.R;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+
+import java.util.List;
 
 /**
  * @author: maruimin
@@ -15,4 +19,10 @@ public interface ProductFeignService {
 
     @GetMapping("/product/spuinfo/skuId/{id}")
     R getSpuInfoBySkuId(@PathVariable("id") Long skuId);
+
+    /**
+     * 批量查询sku对应的spu信息，返回 skuId -> spu
+     */
+    @PostMapping("/product/spuinfo/skuIds")
+    R getSpuInfosBySkuIds(@RequestBody List<Long> skuIds);
 }
@@ -1,19 +1,15 @@
 package com.atguigu.gulimall.order.listener;
 
-import com.alipay.api.AlipayApiException;
-import com.alipay.api.internal.util.AlipaySignature;
-import com.atguigu.gulimall.order.config.AlipayTemplate;
-import com.atguigu.gulimall.order.service.OrderService;
+import com.atguigu.gulimall.order.component.AlipayNotifyIngestor;
 import com.atguigu.gulimall.order.vo.PayAsyncVo;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author: maruimin
@@ -25,45 +21,23 @@ import java.util.Map;
 public class OrderPayedListener {
 
     @Autowired
-    OrderService orderService;
-
-    @Autowired
-    AlipayTemplate alipayTemplate;
+    AlipayNotifyIngestor alipayNotifyIngestor;
 
     /**
      * 支付宝成功异步通知
+     * 验签和落库都交给AlipayNotifyIngestor，servlet线程不等待，落库完成后再应答success
      */
     @PostMapping("/payed/notify")
-    public String handleAlipayed(PayAsyncVo vo, HttpServletRequest request) throws UnsupportedEncodingException, AlipayApiException {
-//        Map<String, String[]> map = request.getParameterMap();
-//        for (String key : map.keySet()) {
-//            String value = request.getParameter(key);
-//            System.out.println("参数名：" + key + "==>参数值：" + value);
-//        }
-//
-        // 验签
-        Map<String, String> params = new HashMap<>();
+    public CompletableFuture<String> handleAlipayed(PayAsyncVo vo, HttpServletRequest request) {
+        // 验签参数，多值参数用逗号拼接
         Map<String, String[]> requestParams = request.getParameterMap();
-        for (Iterator<String> iter = requestParams.keySet().iterator(); iter.hasNext();) {
-            String name = (String) iter.next();
-            String[] values = (String[]) requestParams.get(name);
-            String valueStr = "";
-            for (int i = 0; i < values.length; i ++) {
-                valueStr = (i == values.length - 1) ? valueStr + values[i]
-                        : valueStr + values[i] + ",";
-            }
+        Map<String, String> params = new HashMap<>(requestParams.size() * 2);
+        for (Map.Entry<String, String[]> entry : requestParams.entrySet()) {
             // 乱码解决，这段代码在出现乱码时使用
 //            valueStr = new String(valueStr.getBytes("ISO-8859-1"), "utf-8");
-            params.put(name, valueStr);
-        }
-        boolean signVerified = AlipaySignature.rsaCheckV1(params, alipayTemplate.getAlipay_public_key(), alipayTemplate.getCharset(), alipayTemplate.getSign_type());
-
-        if (signVerified) {
-            System.out.println("签名验证通过");
-            return orderService.handlePayResult(vo);
-        } else {
-            return "error";
+            params.put(entry.getKey(), String.join(",", entry.getValue()));
         }
+        return alipayNotifyIngestor.ingest(params, vo);
     }
 
 }
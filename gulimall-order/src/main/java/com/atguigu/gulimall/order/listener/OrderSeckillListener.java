@@ -6,28 +6,80 @@ import com.atguigu.gulimall.order.service.OrderService;
 import com.rabbitmq.client.Channel;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.Message;
-import org.springframework.amqp.rabbit.annotation.RabbitHandler;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * 秒杀订单批量消费
+ * 1. 一批消息的订单和订单项各用一条多行insert在一个事务里保存，成功后一次ack整批
+ * 2. 整批失败时逐条重试，把有问题的消息隔离出来，不会让整批反复重新入队
+ */
 @Slf4j
-@RabbitListener(queues = "order.seckill.order.queue")
+@Component
 public class OrderSeckillListener {
 
     @Autowired
     OrderService orderService;
 
-    @RabbitHandler
-    public void listener(SeckillOrderTo seckillOrder, Channel channel, Message message) throws IOException {
+    @Autowired
+    MessageConverter messageConverter;
+
+    @RabbitListener(queues = "order.seckill.order.queue", containerFactory = "seckillBatchContainerFactory")
+    public void listener(List<Message> messages, Channel channel) throws IOException {
+        log.info("准备批量创建秒杀订单，共{}条", messages.size());
+        List<SeckillOrderTo> orders = new ArrayList<>(messages.size());
+        List<Message> converted = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            try {
+                orders.add((SeckillOrderTo) messageConverter.fromMessage(message));
+                converted.add(message);
+            } catch (MessageConversionException | ClassCastException e) {
+                // 无法解析的消息不重新入队，转到死信队列order.seckill.order.dead.queue
+                log.error("秒杀订单消息无法解析，转入死信队列: {}", message, e);
+                channel.basicReject(deliveryTag(message), false);
+            }
+        }
+        if (orders.isEmpty()) {
+            return;
+        }
+
+        try {
+            orderService.createSeckillOrders(orders);
+            channel.basicAck(deliveryTag(converted.get(converted.size() - 1)), true);
+        } catch (Exception e) {
+            log.warn("秒杀订单批量保存失败，改为逐条保存", e);
+            for (int i = 0; i < orders.size(); i++) {
+                createOne(orders.get(i), deliveryTag(converted.get(i)), channel);
+            }
+        }
+    }
+
+    private void createOne(SeckillOrderTo order, long deliveryTag, Channel channel) throws IOException {
         try {
-            log.info("准备创建秒杀订单的详细信息。。。");
-            orderService.createSeckillOrder(seckillOrder);
-            channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
+            orderService.createSeckillOrder(order);
+            channel.basicAck(deliveryTag, false);
+        } catch (DuplicateKeyException e) {
+            // 重复投递的订单已经保存过了
+            channel.basicAck(deliveryTag, false);
+        } catch (DataIntegrityViolationException e) {
+            log.error("秒杀订单数据有误，转入死信队列: {}", order, e);
+            channel.basicReject(deliveryTag, false);
         } catch (Exception e) {
-            channel.basicReject(message.getMessageProperties().getDeliveryTag(), true);
+            channel.basicReject(deliveryTag, true);
         }
     }
 
+    private long deliveryTag(Message message) {
+        return message.getMessageProperties().getDeliveryTag();
+    }
+
 }
@@ -6,6 +6,8 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.atguigu.common.utils.PageUtils;
 import com.atguigu.gulimall.order.entity.OrderEntity;
 
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
@@ -26,14 +28,42 @@ public interface OrderService extends IService<OrderEntity> {
 
     OrderEntity getOrderByOrderSn(String orderSn);
 
+    /**
+     * 批量查询订单状态，返回 订单号 -> 状态，不存在的订单不在结果中
+     */
+    Map<String, Integer> getOrderStatusBySns(List<String> orderSns);
+
     void closeOrder(OrderEntity entity);
 
+    /**
+     * 批量关闭超时的订单
+     */
+    void closeOrders(List<Long> orderIds);
+
+    /**
+     * 按id游标查询创建时间早于createdBefore且仍未支付的订单id
+     */
+    List<Long> listTimeoutOrderIds(Date createdBefore, Long afterId, int limit);
+
     PayVo getOrderPay(String orderSn);
 
+    /**
+     * 当前会员的订单列表，按id倒序游标分页
+     */
+    OrderHistoryPageVo queryHistory(Long lastId, Integer limit);
+
     PageUtils queryPageWithItem(Map<String, Object> params);
 
-    String handlePayResult(PayAsyncVo vo);
+    /**
+     * 一批验签通过的支付宝通知在一个事务中落库：按交易号去重保存流水，支付成功的待付款订单改为已付款
+     */
+    void handlePayResults(List<PayAsyncVo> notifies);
 
     void createSeckillOrder(SeckillOrderTo seckillOrder);
+
+    /**
+     * 批量创建秒杀订单，订单和订单项各用一条多行insert
+     */
+    void createSeckillOrders(List<SeckillOrderTo> seckillOrders);
 }
 
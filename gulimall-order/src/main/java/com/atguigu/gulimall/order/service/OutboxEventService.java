@@ -0,0 +1,22 @@
+package com.atguigu.gulimall.order.service;
+
+import com.atguigu.gulimall.order.entity.OutboxEventEntity;
+import com.baomidou.mybatisplus.extension.service.IService;
+
+import java.util.List;
+
+/**
+ * 订单事件发件箱
+ */
+public interface OutboxEventService extends IService<OutboxEventEntity> {
+
+    /**
+     * 在当前事务中写入一条待发送的消息，事务提交后由OrderOutboxRelay投递
+     */
+    void publish(String exchange, String routingKey, Object event);
+
+    /**
+     * 领取一批待投递的事件，按id排序
+     */
+    List<OutboxEventEntity> claim(int limit, long leaseMillis);
+}
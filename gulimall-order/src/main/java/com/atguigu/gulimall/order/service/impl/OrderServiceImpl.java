@@ -1,7 +1,10 @@
 package com.atguigu.gulimall.order.service.impl;
 
 import com.alibaba.fastjson.TypeReference;
+import com.atguigu.common.id.SnowflakeIdGenerator;
+import com.atguigu.common.to.mq.OrderBatchReleaseTo;
 import com.atguigu.common.to.mq.OrderTo;
+import com.atguigu.common.to.mq.SeckillOrderReleaseTo;
 import com.atguigu.common.to.mq.SeckillOrderTo;
 import com.atguigu.common.utils.PageUtils;
 import com.atguigu.common.utils.Query;
@@ -9,6 +12,7 @@ import com.atguigu.common.utils.R;
 import com.atguigu.common.vo.MemberRespVo;
 import com.atguigu.gulimall.order.constant.OrderConstant;
 import com.atguigu.gulimall.order.dao.OrderDao;
+import com.atguigu.gulimall.order.dao.OrderItemDao;
 import com.atguigu.gulimall.order.entity.OrderEntity;
 import com.atguigu.gulimall.order.entity.OrderItemEntity;
 import com.atguigu.gulimall.order.entity.PaymentInfoEntity;
@@ -19,15 +23,18 @@ import com.atguigu.gulimall.order.feign.ProductFeignService;
 import com.atguigu.gulimall.order.feign.WmsFeignService;
 import com.atguigu.gulimall.order.interceptor.LoginUserInterceptor;
 import com.atguigu.gulimall.order.service.OrderItemService;
+import com.atguigu.gulimall.order.component.ContextFanOut;
+import com.atguigu.gulimall.order.component.OrderTimeoutScheduler;
+import com.atguigu.gulimall.order.config.OrderConfirmProperties;
 import com.atguigu.gulimall.order.service.OrderService;
+import com.atguigu.gulimall.order.service.OutboxEventService;
 import com.atguigu.gulimall.order.service.PaymentInfoService;
 import com.atguigu.gulimall.order.to.OrderCreateTo;
 import com.atguigu.gulimall.order.vo.*;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
-import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.aop.framework.AopContext;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -37,22 +44,22 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
-import org.springframework.web.context.request.RequestAttributes;
-import org.springframework.web.context.request.RequestContextHolder;
 
 import java.math.BigDecimal;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 
+@Slf4j
 @Service("orderService")
 public class OrderServiceImpl extends ServiceImpl<OrderDao, OrderEntity> implements OrderService {
 
-    private ThreadLocal<OrderSubmitVo> confirmVoThreadLocal = new ThreadLocal<>();
+    private static final int HISTORY_PAGE_SIZE = 10;
+
+    private static final int HISTORY_MAX_PAGE_SIZE = 50;
 
     @Autowired
     MemberFeignService memberFeignService;
@@ -63,9 +70,6 @@ public class OrderServiceImpl extends ServiceImpl<OrderDao, OrderEntity> impleme
     @Autowired
     CartFeignService cartFeignService;
 
-    @Autowired
-    ThreadPoolExecutor executor;
-
     @Autowired
     WmsFeignService wmsFeignService;
 
@@ -76,10 +80,25 @@ public class OrderServiceImpl extends ServiceImpl<OrderDao, OrderEntity> impleme
     ProductFeignService productFeignService;
 
     @Autowired
-    RabbitTemplate rabbitTemplate;
+    PaymentInfoService paymentInfoService;
 
     @Autowired
-    PaymentInfoService paymentInfoService;
+    OrderItemDao orderItemDao;
+
+    @Autowired
+    OutboxEventService outboxEventService;
+
+    @Autowired
+    OrderTimeoutScheduler orderTimeoutScheduler;
+
+    @Autowired
+    ContextFanOut fanOut;
+
+    @Autowired
+    SnowflakeIdGenerator idGenerator;
+
+    @Autowired
+    OrderConfirmProperties confirmProperties;
 
     @Override
     public PageUtils queryPage(Map<String, Object> params) {
@@ -96,32 +115,30 @@ public class OrderServiceImpl extends ServiceImpl<OrderDao, OrderEntity> impleme
         OrderConfirmVo confirmVo = new OrderConfirmVo();
         MemberRespVo memberRespVo = LoginUserInterceptor.loginUser.get();
 
-        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
-
-        CompletableFuture<Void> getAddressFuture = CompletableFuture.runAsync(() -> {
-            // 1. 远程查询所有的收货地址列表
-            RequestContextHolder.setRequestAttributes(requestAttributes);
-            List<MemberAddressVo> address = memberFeignService.getAddress(memberRespVo.getId());
-            confirmVo.setAddress(address);
-        }, executor);
-
-        CompletableFuture<Void> cartFuture = CompletableFuture.runAsync(() -> {
-            // 2. 远程查询购物车所有选中的购物项
-            RequestContextHolder.setRequestAttributes(requestAttributes);
-            List<OrderItemVo> currentUserCartItems = cartFeignService.getCurrentUserCartItems();
-            confirmVo.setItems(currentUserCartItems);
-            // 注意: feign调用其他服务是不会携带cookie等参数的，所以直接请求过去会被认为没有登录，所以需要配置RequestInterceptor信息
-        }, executor).thenRunAsync(() -> {
-            List<OrderItemVo> items = confirmVo.getItems();
+        // 1. 远程查询所有的收货地址列表
+        CompletableFuture<List<MemberAddressVo>> addressFuture = fanOut.supply("查询收货地址",
+                () -> memberFeignService.getAddress(memberRespVo.getId()),
+                confirmProperties.getAddressTimeout(), Collections.emptyList());
+
+        // 2. 远程查询购物车所有选中的购物项
+        // 注意: feign调用其他服务是不会携带cookie等参数的，所以直接请求过去会被认为没有登录，所以需要配置RequestInterceptor信息
+        // 购物车查不到时降级为null，和空购物车区分开，页面提示购物车暂时不可用
+        CompletableFuture<List<OrderItemVo>> cartFuture = fanOut.supply("查询购物车",
+                cartFeignService::getCurrentUserCartItems,
+                confirmProperties.getCartTimeout(), null);
+
+        // 拿到购物车的sku就立即查询库存，查不到时页面显示库存未知
+        CompletableFuture<Map<Long, Boolean>> stockFuture = fanOut.then("查询库存", cartFuture, items -> {
+            if (items == null || items.isEmpty()) {
+                return Collections.<Long, Boolean>emptyMap();
+            }
             List<Long> collect = items.stream().map(OrderItemVo::getSkuId).collect(Collectors.toList());
             R skuHasStock = wmsFeignService.getSkuHasStock(collect);
             List<SkuStockVo> data = skuHasStock.getData(new TypeReference<List<SkuStockVo>>() {
             });
-            if (data != null) {
-                Map<Long, Boolean> map = data.stream().collect(Collectors.toMap(SkuStockVo::getSkuId, SkuStockVo::getHasStock));
-                confirmVo.setStocks(map);
-            }
-        }, executor);
+            return data == null ? null : data.stream().collect(Collectors.toMap(SkuStockVo::getSkuId, SkuStockVo::getHasStock));
+        }, confirmProperties.getStockTimeout(), null);
+
         // 3. 查询用户积分
         Integer integration = memberRespVo.getIntegration();
         confirmVo.setIntegration(integration);
@@ -131,14 +148,27 @@ public class OrderServiceImpl extends ServiceImpl<OrderDao, OrderEntity> impleme
         String redis_order_key = OrderConstant.USER_ORDER_TOKEN_PREFIX + memberRespVo.getId().toString();
         redisTemplate.opsForValue().set(redis_order_key, token, 30, TimeUnit.MINUTES);
         confirmVo.setOrderToken(token);
-        CompletableFuture.allOf(getAddressFuture, cartFuture).get();
+
+        // 每个调用都有超时降级，这里的等待时间有上限
+        CompletableFuture.allOf(addressFuture, cartFuture, stockFuture).get();
+        confirmVo.setAddress(addressFuture.get());
+        List<OrderItemVo> items = cartFuture.get();
+        confirmVo.setItems(items == null ? Collections.emptyList() : items);
+        confirmVo.setCartUnavailable(items == null);
+        Map<Long, Boolean> stocks = stockFuture.get();
+        confirmVo.setStocks(stocks == null ? Collections.emptyMap() : stocks);
+        confirmVo.setStockUnknown(stocks == null);
         return confirmVo;
     }
 
-    @Transactional
+    /**
+     * 下单不在一个大事务里完成：
+     * 1. 验令牌、并行查询购物车和运费、验价、远程锁库存都不开事务，不占用数据库连接
+     * 2. 本地事务只包含订单、订单项和发件箱消息的插入
+     * 库存先于订单锁定，如果之后保存订单失败，库存的自动解锁会因为查不到订单而解锁
+     */
     @Override
     public SubmitOrderResponseVo submitOrder(OrderSubmitVo vo) {
-        confirmVoThreadLocal.set(vo);
         SubmitOrderResponseVo response = new SubmitOrderResponseVo();
         MemberRespVo memberRespVo = LoginUserInterceptor.loginUser.get();
         response.setCode(0);
@@ -152,47 +182,47 @@ public class OrderServiceImpl extends ServiceImpl<OrderDao, OrderEntity> impleme
             // 令牌验证失败
             response.setCode(1);
             return response;
-        } else {
-            // 验证成功
-            // 下单，创建订单，验令牌，验价格，锁库存........
-            OrderCreateTo order = createOrder();
-            //2. 验价
-            BigDecimal payAmount = order.getOrder().getPayAmount();
-            BigDecimal payPrice = vo.getPayPrice();
-            if (Math.abs(payAmount.subtract(payPrice).doubleValue()) < 0.01) {
-                // 验价通过
-                // 3.保存订单
-                saveOrder(order);
-                // 4. 库存锁定，只要有异常回滚订单数据
-                // 订单号，所有订单项(skuId, skuName, num)
-                WareSkuLockVo lockVo = new WareSkuLockVo();
-                lockVo.setOrderSn(order.getOrder().getOrderSn());
-                List<OrderItemVo> locks = order.getOrderItems().stream().map(item -> {
-                    OrderItemVo itemVo = new OrderItemVo();
-                    itemVo.setSkuId(item.getSkuId());
-                    itemVo.setCount(item.getSkuQuantity());
-                    itemVo.setTitle(item.getSkuName());
-                    return itemVo;
-                }).collect(Collectors.toList());
-                lockVo.setLocks(locks);
-                R r = wmsFeignService.orderLockStock(lockVo);
-                if (r.getCode() == 0) {
-                    // 锁成功了
-                    response.setOrder(order.getOrder());
-                    rabbitTemplate.convertAndSend("order-event-exchange", "order.create.order", order.getOrder());
-                    return response;
-                } else {
-                    // 锁失败了
-//                    throw new NoStockException(1L);
-                    response.setCode(3);
-                    return response;
-                }
-            } else {
-                // 验价没通过
-            }
         }
-
-        return null;
+        // 2. 创建订单，购物车和运费并行查询
+        OrderCreateTo order = createOrder(vo, memberRespVo);
+        if (order == null) {
+            // 运费或者订单项没有查到
+            response.setCode(4);
+            return response;
+        }
+        // 3. 验价
+        BigDecimal payAmount = order.getOrder().getPayAmount();
+        BigDecimal payPrice = vo.getPayPrice();
+        if (Math.abs(payAmount.subtract(payPrice).doubleValue()) >= 0.01) {
+            // 验价没通过
+            response.setCode(2);
+            return response;
+        }
+        // 4. 库存锁定，订单号，所有订单项(skuId, skuName, num)
+        WareSkuLockVo lockVo = new WareSkuLockVo();
+        lockVo.setOrderSn(order.getOrder().getOrderSn());
+        lockVo.setAreacode(order.getReceiverAreacode());
+        List<OrderItemVo> locks = order.getOrderItems().stream().map(item -> {
+            OrderItemVo itemVo = new OrderItemVo();
+            itemVo.setSkuId(item.getSkuId());
+            itemVo.setCount(item.getSkuQuantity());
+            itemVo.setTitle(item.getSkuName());
+            return itemVo;
+        }).collect(Collectors.toList());
+        lockVo.setLocks(locks);
+        R r = wmsFeignService.orderLockStock(lockVo);
+        if (r.getCode() != 0) {
+            // 锁失败了，订单还没有保存，直接返回
+            response.setCode(3);
+            return response;
+        }
+        // 5. 保存订单，只有这一步在本地事务中
+        OrderServiceImpl orderService = (OrderServiceImpl) AopContext.currentProxy();
+        orderService.saveOrder(order);
+        // 6. 提交后登记超时时间，到期未支付自动关闭
+        orderTimeoutScheduler.schedule(order.getOrder().getId(), order.getOrder().getCreateTime());
+        response.setOrder(order.getOrder());
+        return response;
     }
 
     @Override
@@ -200,6 +230,17 @@ public class OrderServiceImpl extends ServiceImpl<OrderDao, OrderEntity> impleme
         return this.getOne(new QueryWrapper<OrderEntity>().eq("order_sn", orderSn));
     }
 
+    @Override
+    public Map<String, Integer> getOrderStatusBySns(List<String> orderSns) {
+        if (orderSns.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        return this.list(new QueryWrapper<OrderEntity>().select("order_sn", "status").in("order_sn", orderSns))
+                .stream()
+                .collect(Collectors.toMap(OrderEntity::getOrderSn, OrderEntity::getStatus, (a, b) -> a));
+    }
+
+    @Transactional
     @Override
     public void closeOrder(OrderEntity entity) {
         // 查询当前这个订单的最新状态
@@ -212,11 +253,83 @@ public class OrderServiceImpl extends ServiceImpl<OrderDao, OrderEntity> impleme
             this.updateById(update);
             OrderTo orderTo = new OrderTo();
             BeanUtils.copyProperties(orderEntity, orderTo);
-            // 发给MQ一个
-            rabbitTemplate.convertAndSend("order-event-exchange", "order.release.other", orderTo);
+            // 发给MQ一个，和订单状态在同一个事务中写入发件箱
+            outboxEventService.publish("order-event-exchange", "order.release.other", orderTo);
         }
     }
 
+    /**
+     * 批量关单：一次锁定读 + 一条多行条件update，整批只发一条库存释放消息；
+     * 秒杀订单没有锁过仓库库存，改为发一条秒杀库存归还消息，由秒杀服务加回redis中的库存
+     */
+    @Transactional
+    @Override
+    public void closeOrders(List<Long> orderIds) {
+        if (orderIds == null || orderIds.isEmpty()) {
+            return;
+        }
+        // 锁住仍是新建状态的订单，和支付回调互斥，拿到真正要关闭的订单号
+        List<OrderEntity> orders = this.list(new QueryWrapper<OrderEntity>().select("id", "order_sn", "member_id", "promotion_session_id")
+                .in("id", orderIds)
+                .eq("status", OrderStatusEnum.CREATE_NEW.getCode())
+                .last("for update"));
+        if (orders.isEmpty()) {
+            return;
+        }
+        List<Long> ids = orders.stream().map(OrderEntity::getId).collect(Collectors.toList());
+        this.baseMapper.updateStatusBatch(ids, OrderStatusEnum.CREATE_NEW.getCode(), OrderStatusEnum.CANCLED.getCode());
+
+        Map<Boolean, List<OrderEntity>> partitioned = orders.stream()
+                .collect(Collectors.partitioningBy(order -> order.getPromotionSessionId() != null));
+        List<OrderEntity> normalOrders = partitioned.get(false);
+        if (!normalOrders.isEmpty()) {
+            OrderBatchReleaseTo releaseTo = new OrderBatchReleaseTo();
+            releaseTo.setOrderSns(normalOrders.stream().map(OrderEntity::getOrderSn).collect(Collectors.toList()));
+            outboxEventService.publish("order-event-exchange", "order.release.other", releaseTo);
+        }
+        List<OrderEntity> seckillOrders = partitioned.get(true);
+        if (!seckillOrders.isEmpty()) {
+            outboxEventService.publish("order-event-exchange", "order.release.seckill", buildSeckillRelease(seckillOrders));
+        }
+    }
+
+    /**
+     * 秒杀订单只有一个订单项，一次in查询拿到商品和数量
+     */
+    private SeckillOrderReleaseTo buildSeckillRelease(List<OrderEntity> seckillOrders) {
+        Map<String, OrderEntity> ordersBySn = seckillOrders.stream()
+                .collect(Collectors.toMap(OrderEntity::getOrderSn, order -> order));
+        List<SeckillOrderTo> releases = new ArrayList<>(seckillOrders.size());
+        for (OrderItemEntity item : orderItemDao.selectByOrderSns(new ArrayList<>(ordersBySn.keySet()))) {
+            OrderEntity order = ordersBySn.get(item.getOrderSn());
+            SeckillOrderTo to = new SeckillOrderTo();
+            to.setOrderSn(order.getOrderSn());
+            to.setMemberId(order.getMemberId());
+            to.setPromotionSessionId(order.getPromotionSessionId());
+            to.setSkuId(item.getSkuId());
+            to.setSeckillPrice(item.getSkuPrice());
+            to.setNum(item.getSkuQuantity());
+            releases.add(to);
+        }
+        SeckillOrderReleaseTo releaseTo = new SeckillOrderReleaseTo();
+        releaseTo.setOrders(releases);
+        return releaseTo;
+    }
+
+    /**
+     * 兜底扫描包含秒杀订单：秒杀订单是批量插入的，不登记时间轮，只靠扫描超时关闭，关闭时归还秒杀库存
+     */
+    @Override
+    public List<Long> listTimeoutOrderIds(Date createdBefore, Long afterId, int limit) {
+        List<OrderEntity> orders = this.list(new QueryWrapper<OrderEntity>().select("id")
+                .eq("status", OrderStatusEnum.CREATE_NEW.getCode())
+                .lt("create_time", createdBefore)
+                .gt("id", afterId)
+                .orderByAsc("id")
+                .last("limit " + limit));
+        return orders.stream().map(OrderEntity::getId).collect(Collectors.toList());
+    }
+
     @Override
     public PayVo getOrderPay(String orderSn) {
         PayVo payVo = new PayVo();
@@ -243,84 +356,204 @@ public class OrderServiceImpl extends ServiceImpl<OrderDao, OrderEntity> impleme
                 new QueryWrapper<OrderEntity>().eq("member_id", memberRespVo.getId()).orderByDesc("id")
         );
 
-        List<OrderEntity> order_sn = page.getRecords().stream().map(order -> {
-            List<OrderItemEntity> itemEntities = orderItemService.list(new QueryWrapper<OrderItemEntity>().eq("order_sn", order.getOrderSn()));
-            order.setItemEntities(itemEntities);
-            return order;
-        }).collect(Collectors.toList());
-        page.setRecords(order_sn);
+        // 一次in查询整页订单的订单项，再按订单号分组
+        List<OrderEntity> orders = page.getRecords();
+        if (!orders.isEmpty()) {
+            List<String> orderSns = orders.stream().map(OrderEntity::getOrderSn).collect(Collectors.toList());
+            Map<String, List<OrderItemEntity>> itemsByOrderSn = new HashMap<>(orderSns.size() * 4 / 3 + 1);
+            for (OrderItemEntity item : orderItemDao.selectByOrderSns(orderSns)) {
+                itemsByOrderSn.computeIfAbsent(item.getOrderSn(), k -> new ArrayList<>()).add(item);
+            }
+            orders.forEach(order -> order.setItemEntities(itemsByOrderSn.getOrDefault(order.getOrderSn(), Collections.emptyList())));
+        }
         return new PageUtils(page);
     }
 
     @Override
-    public String handlePayResult(PayAsyncVo vo) {
-        // 1.保存交易流水
-        PaymentInfoEntity infoEntity = new PaymentInfoEntity();
-        infoEntity.setAlipayTradeNo(vo.getTrade_no());
-        infoEntity.setOrderSn(vo.getOut_trade_no());
-        infoEntity.setPaymentStatus(vo.getTrade_status());
-        infoEntity.setCallbackTime(vo.getNotify_time());
-        paymentInfoService.save(infoEntity);
-
-        // 2. 修改订单状态信息
-        if (vo.getTrade_status().equals("TRADE_SUCCESS") || vo.getTrade_status().equals("TRADE_FINISHED")) {
-            // 支付成功状态
-            String outTradeNo = vo.getOut_trade_no();
-            this.baseMapper.updateOrderStatus(outTradeNo, OrderStatusEnum.PAYED.getCode());
+    public OrderHistoryPageVo queryHistory(Long lastId, Integer limit) {
+        MemberRespVo memberRespVo = LoginUserInterceptor.loginUser.get();
+        int size = Math.max(1, Math.min(limit == null ? HISTORY_PAGE_SIZE : limit, HISTORY_MAX_PAGE_SIZE));
+        // 多查一条判断是否还有下一页
+        List<OrderHistoryVo> orders = this.baseMapper.selectHistory(memberRespVo.getId(), lastId, size + 1);
+        boolean hasMore = orders.size() > size;
+        if (hasMore) {
+            orders = orders.subList(0, size);
+        }
+        if (!orders.isEmpty()) {
+            List<String> orderSns = orders.stream().map(OrderHistoryVo::getOrderSn).collect(Collectors.toList());
+            Map<String, List<OrderHistoryItemVo>> itemsByOrderSn = new HashMap<>(orderSns.size() * 4 / 3 + 1);
+            for (OrderHistoryItemVo item : orderItemDao.selectHistoryItems(orderSns)) {
+                itemsByOrderSn.computeIfAbsent(item.getOrderSn(), k -> new ArrayList<>()).add(item);
+            }
+            orders.forEach(order -> order.setItems(itemsByOrderSn.getOrDefault(order.getOrderSn(), Collections.emptyList())));
+        }
+
+        OrderHistoryPageVo pageVo = new OrderHistoryPageVo();
+        pageVo.setList(orders);
+        pageVo.setHasMore(hasMore);
+        pageVo.setNextCursor(orders.isEmpty() ? null : orders.get(orders.size() - 1).getId());
+        return pageVo;
+    }
+
+    @Transactional
+    @Override
+    public void handlePayResults(List<PayAsyncVo> notifies) {
+        // 1. 同一笔交易在一批里有多条通知时只保留状态最靠后的一条，状态相同时保留最后一条
+        Map<String, PayAsyncVo> latest = new LinkedHashMap<>(notifies.size() * 2);
+        for (PayAsyncVo vo : notifies) {
+            latest.merge(vo.getTrade_no(), vo, (old, current) ->
+                    tradeStatusRank(current.getTrade_status()) >= tradeStatusRank(old.getTrade_status()) ? current : old);
+        }
+
+        // 2. 批量保存交易流水，交易号唯一键去掉支付宝重试的通知，已有的流水只会往后推进状态
+        Date now = new Date();
+        List<PaymentInfoEntity> payments = new ArrayList<>(latest.size());
+        List<String> payedOrderSns = new ArrayList<>(latest.size());
+        for (PayAsyncVo vo : latest.values()) {
+            PaymentInfoEntity infoEntity = new PaymentInfoEntity();
+            infoEntity.setAlipayTradeNo(vo.getTrade_no());
+            infoEntity.setOrderSn(vo.getOut_trade_no());
+            infoEntity.setPaymentStatus(vo.getTrade_status());
+            infoEntity.setSubject(vo.getSubject());
+            if (!StringUtils.isEmpty(vo.getTotal_amount())) {
+                infoEntity.setTotalAmount(new BigDecimal(vo.getTotal_amount()));
+            }
+            infoEntity.setCreateTime(now);
+            infoEntity.setCallbackTime(vo.getNotify_time());
+            payments.add(infoEntity);
+
+            if ("TRADE_SUCCESS".equals(vo.getTrade_status()) || "TRADE_FINISHED".equals(vo.getTrade_status())) {
+                payedOrderSns.add(vo.getOut_trade_no());
+            }
+        }
+        paymentInfoService.upsertBatch(payments);
+
+        // 3. 支付成功的订单一条update改为已付款，只改待付款的订单，重复通知不会再写
+        if (!payedOrderSns.isEmpty()) {
+            int updated = this.baseMapper.updateStatusBySns(payedOrderSns,
+                    OrderStatusEnum.CREATE_NEW.getCode(), OrderStatusEnum.PAYED.getCode());
+            if (updated < payedOrderSns.size()) {
+                log.info("{}个支付成功的订单不是待付款状态(重复通知或者已关闭)，订单号{}",
+                        payedOrderSns.size() - updated, payedOrderSns);
+            }
+        }
+    }
+
+    /**
+     * 支付宝交易状态的先后顺序，和PaymentInfoDao.upsertBatch中的field(...)保持一致
+     * WAIT_BUYER_PAY -> TRADE_SUCCESS -> TRADE_CLOSED(全额退款) / TRADE_FINISHED(不可退款)
+     */
+    private static int tradeStatusRank(String tradeStatus) {
+        switch (String.valueOf(tradeStatus)) {
+            case "WAIT_BUYER_PAY":
+                return 1;
+            case "TRADE_SUCCESS":
+                return 2;
+            case "TRADE_CLOSED":
+                return 3;
+            case "TRADE_FINISHED":
+                return 4;
+            default:
+                return 0;
         }
-        return "success";
     }
 
+    @Transactional
     @Override
     public void createSeckillOrder(SeckillOrderTo seckillOrder) {
         // 保存订单信息
+        OrderEntity orderEntity = buildSeckillOrder(seckillOrder);
+        this.save(orderEntity);
+
+        // 保存订单项信息
+        OrderItemEntity orderItemEntity = buildSeckillOrderItem(seckillOrder);
+        orderItemService.save(orderItemEntity);
+    }
+
+    @Transactional
+    @Override
+    public void createSeckillOrders(List<SeckillOrderTo> seckillOrders) {
+        List<OrderEntity> orders = seckillOrders.stream().map(this::buildSeckillOrder).collect(Collectors.toList());
+        List<OrderItemEntity> items = seckillOrders.stream().map(this::buildSeckillOrderItem).collect(Collectors.toList());
+        this.baseMapper.insertBatch(orders);
+        orderItemDao.insertBatch(items);
+    }
+
+    private OrderEntity buildSeckillOrder(SeckillOrderTo seckillOrder) {
         OrderEntity orderEntity = new OrderEntity();
         orderEntity.setOrderSn(seckillOrder.getOrderSn());
         orderEntity.setMemberId(seckillOrder.getMemberId());
         orderEntity.setStatus(OrderStatusEnum.CREATE_NEW.getCode());
         BigDecimal multiply = seckillOrder.getSeckillPrice().multiply(new BigDecimal(("" + seckillOrder.getNum())));
+        orderEntity.setTotalAmount(multiply);
         orderEntity.setPayAmount(multiply);
-        this.save(orderEntity);
+        orderEntity.setDeleteStatus(0); // 未删除
+        orderEntity.setPromotionSessionId(seckillOrder.getPromotionSessionId());
+        Date now = new Date();
+        orderEntity.setCreateTime(now);
+        orderEntity.setModifyTime(now);
+        return orderEntity;
+    }
 
-        // 保存订单项信息
+    private OrderItemEntity buildSeckillOrderItem(SeckillOrderTo seckillOrder) {
         OrderItemEntity orderItemEntity = new OrderItemEntity();
         orderItemEntity.setOrderSn(seckillOrder.getOrderSn());
-        orderItemEntity.setRealAmount(multiply);
         // todo 获取当前sku的详细信息进行设置 使用feign调用product服务
+        orderItemEntity.setSkuId(seckillOrder.getSkuId());
+        orderItemEntity.setSkuPrice(seckillOrder.getSeckillPrice());
         orderItemEntity.setSkuQuantity(seckillOrder.getNum());
-        orderItemEntity.setOrderSn(seckillOrder.getOrderSn());
-        orderItemService.save(orderItemEntity);
+        orderItemEntity.setRealAmount(seckillOrder.getSeckillPrice().multiply(new BigDecimal(("" + seckillOrder.getNum()))));
+        return orderItemEntity;
     }
 
     /**
-     * 保存订单数据
+     * 保存订单数据，订单项一条多行insert写入
      *
      * @param order
      */
-    private void saveOrder(OrderCreateTo order) {
+    @Transactional
+    public void saveOrder(OrderCreateTo order) {
         OrderEntity orderEntity = order.getOrder();
-        orderEntity.setModifyTime(new Date());
+        Date now = new Date();
+        orderEntity.setCreateTime(now);
+        orderEntity.setModifyTime(now);
         this.save(orderEntity);
 
         List<OrderItemEntity> orderItems = order.getOrderItems();
-        orderItemService.saveBatch(orderItems);
+        orderItemDao.insertBatch(orderItems);
     }
 
-    private OrderCreateTo createOrder() {
+    private OrderCreateTo createOrder(OrderSubmitVo vo, MemberRespVo memberRespVo) {
         OrderCreateTo createTo = new OrderCreateTo();
         //1.生成订单号
-        String orderSn = IdWorker.getTimeId(); //IdWorker可以利用时间戳生成一个唯一的id
-        // 创建订单号
-        OrderEntity entity = buildOrder(orderSn);
+        String orderSn = idGenerator.nextIdString(); // 雪花算法，worker id在redis中租用，跨节点唯一
+
+        // 远程查询运费和收货地址；fanOut在线程池中设置请求上下文，执行完还原，带超时
+        CompletableFuture<FareVo> fareFuture = fanOut.supply("查询运费", () -> {
+            R fare = wmsFeignService.getFare(vo.getAddrId());
+            return fare.getData(new TypeReference<FareVo>() {
+            });
+        }, confirmProperties.getFareTimeout(), null);
 
-        // 2. 获取到所有的订单项
-        List<OrderItemEntity> orderItemEntities = buildOrderItems(orderSn);
+        // 2. 获取到所有的订单项(远程查询购物车和spu信息)
+        CompletableFuture<List<OrderItemEntity>> itemsFuture = fanOut.supply("查询订单项",
+                () -> buildOrderItems(orderSn), confirmProperties.getOrderItemsTimeout(), null);
+
+        // 超时或者失败时降级为null，不能下单
+        FareVo fareResp = fareFuture.join();
+        List<OrderItemEntity> orderItemEntities = itemsFuture.join();
+        if (fareResp == null || orderItemEntities == null || orderItemEntities.isEmpty()) {
+            return null;
+        }
+        OrderEntity entity = buildOrder(orderSn, fareResp, memberRespVo);
 
         // 3. 计算价格、积分等相关
         computePrice(entity, orderItemEntities);
 
         createTo.setOrder(entity);
         createTo.setOrderItems(orderItemEntities);
+        createTo.setFare(fareResp.getFare());
+        createTo.setReceiverAreacode(fareResp.getAddress().getAreacode());
 
         return createTo;
     }
@@ -358,17 +591,11 @@ public class OrderServiceImpl extends ServiceImpl<OrderDao, OrderEntity> impleme
 
     }
 
-    private OrderEntity buildOrder(String orderSn) {
-        MemberRespVo memberRespVo = LoginUserInterceptor.loginUser.get();
+    private OrderEntity buildOrder(String orderSn, FareVo fareResp, MemberRespVo memberRespVo) {
         OrderEntity entity = new OrderEntity();
         entity.setOrderSn(orderSn);
         entity.setMemberId(memberRespVo.getId());
 
-        OrderSubmitVo submitVo = confirmVoThreadLocal.get();
-        // 获取收货地址信息
-        R fare = wmsFeignService.getFare(submitVo.getAddrId());
-        FareVo fareResp = fare.getData(new TypeReference<FareVo>() {
-        });
         // 设置运费信息
         entity.setFreightAmount(fareResp.getFare());
         // 设置收货人信息
@@ -393,8 +620,16 @@ public class OrderServiceImpl extends ServiceImpl<OrderDao, OrderEntity> impleme
     private List<OrderItemEntity> buildOrderItems(String orderSn) {
         List<OrderItemVo> currentUserCartItems = cartFeignService.getCurrentUserCartItems();
         if (currentUserCartItems != null && currentUserCartItems.size() > 0) {
+            // 一次远程调用查出所有订单项的spu信息
+            List<Long> skuIds = currentUserCartItems.stream().map(OrderItemVo::getSkuId).collect(Collectors.toList());
+            R r = productFeignService.getSpuInfosBySkuIds(skuIds);
+            if (r.getCode() != 0) {
+                throw new RuntimeException("远程查询商品spu信息失败: code=" + r.getCode() + ", msg=" + r.get("msg") + ", skuIds=" + skuIds);
+            }
+            Map<Long, SpuInfoVo> spuInfos = r.getData(new TypeReference<Map<Long, SpuInfoVo>>() {
+            });
             return currentUserCartItems.stream().map(cartItem -> {
-                OrderItemEntity itemEntity = buildOrderItem(cartItem);
+                OrderItemEntity itemEntity = buildOrderItem(cartItem, spuInfos.get(cartItem.getSkuId()));
                 itemEntity.setOrderSn(orderSn);
                 return itemEntity;
             }).collect(Collectors.toList());
@@ -402,14 +637,13 @@ public class OrderServiceImpl extends ServiceImpl<OrderDao, OrderEntity> impleme
         return null;
     }
 
-    private OrderItemEntity buildOrderItem(OrderItemVo cartItem) {
+    private OrderItemEntity buildOrderItem(OrderItemVo cartItem, SpuInfoVo data) {
         OrderItemEntity itemEntity = new OrderItemEntity();
         //1.订单信息: 订单号
         //2. 商品的spu信息
-        Long skuId = cartItem.getSkuId();
-        R r = productFeignService.getSpuInfoBySkuId(skuId);
-        SpuInfoVo data = r.getData(new TypeReference<SpuInfoVo>() {
-        });
+        if (data == null) {
+            throw new RuntimeException("商品不存在: " + cartItem.getSkuId());
+        }
         itemEntity.setSpuId(data.getId());
         itemEntity.setSpuBrand(data.getBrandId().toString());
         itemEntity.setSpuName(data.getSpuName());
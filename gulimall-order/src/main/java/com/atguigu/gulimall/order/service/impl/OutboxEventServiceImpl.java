@@ -0,0 +1,72 @@
+package com.atguigu.gulimall.order.service.impl;
+
+import com.atguigu.gulimall.order.component.OrderOutboxRelay;
+import com.atguigu.gulimall.order.dao.OutboxEventDao;
+import com.atguigu.gulimall.order.entity.OutboxEventEntity;
+import com.atguigu.gulimall.order.service.OutboxEventService;
+import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+
+@Service("outboxEventService")
+public class OutboxEventServiceImpl extends ServiceImpl<OutboxEventDao, OutboxEventEntity> implements OutboxEventService {
+
+    @Autowired
+    MessageConverter messageConverter;
+
+    @Autowired
+    OrderOutboxRelay outboxRelay;
+
+    /**
+     * 必须在业务事务中调用，消息和业务数据一起提交或回滚
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    @Override
+    public void publish(String exchange, String routingKey, Object event) {
+        // 写入时就按MQ的消息格式转换好，投递时原样发送
+        Message message = messageConverter.toMessage(event, new MessageProperties());
+        Object typeId = message.getMessageProperties().getHeaders().get(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME);
+
+        OutboxEventEntity entity = new OutboxEventEntity();
+        entity.setExchange(exchange);
+        entity.setRoutingKey(routingKey);
+        entity.setTypeId(typeId == null ? null : typeId.toString());
+        entity.setPayload(new String(message.getBody(), StandardCharsets.UTF_8));
+        entity.setCreateTime(new Date());
+        this.save(entity);
+
+        // 提交后立即唤醒投递线程，不用等下一次轮询
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                outboxRelay.wakeup();
+            }
+        });
+    }
+
+    @Override
+    public List<OutboxEventEntity> claim(int limit, long leaseMillis) {
+        String claimToken = UUID.randomUUID().toString().replace("-", "");
+        Date now = new Date();
+        int claimed = this.baseMapper.claim(claimToken, new Date(now.getTime() + leaseMillis), now, limit);
+        if (claimed == 0) {
+            return Collections.emptyList();
+        }
+        return this.baseMapper.selectClaimed(claimToken);
+    }
+}
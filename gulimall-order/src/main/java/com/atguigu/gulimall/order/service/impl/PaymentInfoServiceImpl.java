@@ -1,6 +1,7 @@
 package com.atguigu.gulimall.order.service.impl;
 
 import org.springframework.stereotype.Service;
+import java.util.List;
 import java.util.Map;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
@@ -26,4 +27,12 @@ public class PaymentInfoServiceImpl extends ServiceImpl<PaymentInfoDao, PaymentI
         return new PageUtils(page);
     }
 
+    @Override
+    public void upsertBatch(List<PaymentInfoEntity> payments) {
+        if (payments.isEmpty()) {
+            return;
+        }
+        this.baseMapper.upsertBatch(payments);
+    }
+
 }
\ No newline at end of file
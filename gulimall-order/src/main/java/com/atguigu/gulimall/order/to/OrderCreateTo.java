@@ -23,4 +23,6 @@ public class OrderCreateTo {
 
     private BigDecimal fare; // 运费
 
+    private String receiverAreacode; // 收货地址的行政区划代码
+
 }
@@ -24,10 +24,20 @@ public class OrderConfirmVo {
     @Getter
     List<OrderItemVo> items;
 
+    // 购物车服务超时或者不可用，页面提示稍后重试，不能当作空购物车
+    @Setter
+    @Getter
+    Boolean cartUnavailable;
+
     @Setter
     @Getter
     Map<Long, Boolean> stocks;
 
+    // 库存服务超时或者不可用，页面显示库存未知
+    @Setter
+    @Getter
+    Boolean stockUnknown;
+
     // 发票记录
 
     // 优惠券信息
@@ -0,0 +1,26 @@
+package com.atguigu.gulimall.order.vo;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * 我的订单列表中的订单项
+ */
+@Data
+public class OrderHistoryItemVo {
+
+    private String orderSn;
+
+    private Long skuId;
+
+    private String skuName;
+
+    private String skuPic;
+
+    private BigDecimal skuPrice;
+
+    private Integer skuQuantity;
+
+    private String skuAttrsVals;
+}
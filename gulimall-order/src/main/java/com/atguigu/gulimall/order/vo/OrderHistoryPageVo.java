@@ -0,0 +1,18 @@
+package com.atguigu.gulimall.order.vo;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 我的订单按游标分页，下一页把nextCursor作为lastId传回来
+ */
+@Data
+public class OrderHistoryPageVo {
+
+    private List<OrderHistoryVo> list;
+
+    private Long nextCursor;
+
+    private Boolean hasMore;
+}
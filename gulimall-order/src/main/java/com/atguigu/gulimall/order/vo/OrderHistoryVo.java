@@ -0,0 +1,32 @@
+package com.atguigu.gulimall.order.vo;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 我的订单列表中的一个订单，只包含列表展示需要的字段
+ */
+@Data
+public class OrderHistoryVo {
+
+    private Long id;
+
+    private String orderSn;
+
+    private Integer status;
+
+    private BigDecimal totalAmount;
+
+    private BigDecimal payAmount;
+
+    private BigDecimal freightAmount;
+
+    private String receiverName;
+
+    private Date createTime;
+
+    private List<OrderHistoryItemVo> items;
+}
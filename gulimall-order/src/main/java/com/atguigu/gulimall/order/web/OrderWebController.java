@@ -61,6 +61,9 @@ public class OrderWebController {
                 case 3:
                     msg += "库存锁定失败，商品库存不足";
                     break;
+                case 4:
+                    msg += "购物车或运费暂时查询不到，请稍后再次提交";
+                    break;
             }
             redirectAttributes.addFlashAttribute("msg", msg);
             return "redirect:http://order.gulimall.com/toTrade";
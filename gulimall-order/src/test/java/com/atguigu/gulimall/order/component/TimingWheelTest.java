@@ -0,0 +1,142 @@
+package com.atguigu.gulimall.order.component;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 时间轮：任务不会提前触发，最多晚一格；到期时间正好落在各层格子边界上的任务也按时触发
+ */
+class TimingWheelTest {
+
+    private static final long TICK = 10;
+
+    private static final int WHEEL_SIZE = 8;
+
+    /**
+     * 第1、2、3层一格的跨度
+     */
+    private static final long[] LEVEL_SPANS = {TICK * WHEEL_SIZE, TICK * WHEEL_SIZE * WHEEL_SIZE, TICK * WHEEL_SIZE * WHEEL_SIZE * WHEEL_SIZE};
+
+    @Test
+    void randomDeadlinesFireWithinOneTick() {
+        long start = 3;
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, start);
+        Random random = new Random(42);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            long deadline = start + random.nextInt((int) (LEVEL_SPANS[2] * 2));
+            deadlines.add(deadline);
+            wheel.add(i, deadline);
+        }
+
+        Map<Integer, Long> fired = runTo(wheel, start, start + LEVEL_SPANS[2] * 2 + TICK, 1);
+
+        assertFiredOnTime(deadlines, fired, 1);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void deadlinesOnLevelBoundariesFireOnTime() {
+        for (long start : new long[]{0, 7, 75, LEVEL_SPANS[0] - 1}) {
+            TimingWheel<Integer> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, start);
+            List<Long> deadlines = new ArrayList<>();
+            for (long span : LEVEL_SPANS) {
+                for (long multiple = 1; multiple <= 3; multiple++) {
+                    long boundary = span * multiple;
+                    for (long deadline : new long[]{boundary - TICK, boundary - 1, boundary, boundary + 1, boundary + TICK}) {
+                        if (deadline >= start) {
+                            wheel.add(deadlines.size(), deadline);
+                            deadlines.add(deadline);
+                        }
+                    }
+                }
+            }
+
+            Map<Integer, Long> fired = runTo(wheel, start, LEVEL_SPANS[2] * 3 + 2 * TICK, 1);
+
+            assertFiredOnTime(deadlines, fired, 1);
+            // 1ms步进时触发时间正好是到期时间向上对齐到格子
+            for (int i = 0; i < deadlines.size(); i++) {
+                long deadline = deadlines.get(i);
+                long aligned = (deadline + TICK - 1) / TICK * TICK;
+                assertEquals(Math.max(aligned, start - start % TICK + TICK), (long) fired.get(i),
+                        "start=" + start + " deadline=" + deadline);
+            }
+        }
+    }
+
+    @Test
+    void tasksAddedWhileRunningFireOnTime() {
+        long start = 0;
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, start);
+        Random random = new Random(7);
+        List<Long> deadlines = new ArrayList<>();
+        Map<Integer, Long> fired = new HashMap<>();
+        long end = LEVEL_SPANS[2] * 2;
+        for (long now = start; now <= end + LEVEL_SPANS[2] + TICK; now++) {
+            long current = now;
+            wheel.advance(now, task -> fired.merge(task, current, (a, b) -> {
+                throw new AssertionError("任务" + task + "触发了两次");
+            }));
+            if (now <= end && now % 13 == 0) {
+                // 包括已经到期的、落在当前格子里的和落在各层的
+                long deadline = now - 5 + random.nextInt((int) LEVEL_SPANS[2]);
+                wheel.add(deadlines.size(), deadline);
+                deadlines.add(Math.max(deadline, now));
+            }
+        }
+
+        assertFiredOnTime(deadlines, fired, 1);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void coarseAdvanceNeverFiresEarly() {
+        long start = 1;
+        long step = 37;
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, start);
+        Random random = new Random(11);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            long deadline = start + random.nextInt((int) LEVEL_SPANS[2]);
+            deadlines.add(deadline);
+            wheel.add(i, deadline);
+        }
+
+        Map<Integer, Long> fired = runTo(wheel, start, start + LEVEL_SPANS[2] + step + TICK, step);
+
+        assertFiredOnTime(deadlines, fired, step);
+    }
+
+    private static Map<Integer, Long> runTo(TimingWheel<Integer> wheel, long start, long end, long step) {
+        Map<Integer, Long> fired = new HashMap<>();
+        for (long now = start; now <= end; now += step) {
+            long current = now;
+            wheel.advance(now, task -> fired.merge(task, current, (a, b) -> {
+                throw new AssertionError("任务" + task + "触发了两次");
+            }));
+        }
+        return fired;
+    }
+
+    /**
+     * 每个任务都触发了，不早于到期时间，晚的时间不超过一格加上时钟推进的步长
+     */
+    private static void assertFiredOnTime(List<Long> deadlines, Map<Integer, Long> fired, long step) {
+        assertEquals(deadlines.size(), fired.size());
+        for (int i = 0; i < deadlines.size(); i++) {
+            long deadline = deadlines.get(i);
+            Long at = fired.get(i);
+            assertTrue(at != null && at >= deadline, "任务" + i + "提前触发：deadline=" + deadline + " at=" + at);
+            assertTrue(at - deadline < TICK + step - 1, "任务" + i + "延迟超过一格：deadline=" + deadline + " at=" + at);
+        }
+    }
+}
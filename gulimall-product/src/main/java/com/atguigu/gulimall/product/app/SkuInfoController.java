@@ -9,6 +9,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 
@@ -68,6 +71,19 @@ public class SkuInfoController {
         return R.ok().put("skuInfo", skuInfo);
     }
 
+    /**
+     * 批量查询sku信息
+     */
+    @PostMapping("/infos")
+    public R infos(@RequestBody List<Long> skuIds) {
+        if (skuIds == null || skuIds.isEmpty()) {
+            return R.ok().setData(Collections.emptyList());
+        }
+        Collection<SkuInfoEntity> skuInfos = skuInfoService.listByIds(skuIds);
+
+        return R.ok().setData(skuInfos);
+    }
+
     /**
      * 保存
      */
@@ -1,6 +1,7 @@
 package com.atguigu.gulimall.product.app;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import com.atguigu.gulimall.product.vo.SpuSaveVo;
@@ -43,6 +44,15 @@ public class SpuInfoController {
         return R.ok().setData(entity);
     }
 
+    /**
+     * 批量查询sku对应的spu信息，返回 skuId -> spu
+     */
+    @PostMapping("/skuIds")
+    public R getSpuInfosBySkuIds(@RequestBody List<Long> skuIds) {
+        Map<Long, SpuInfoEntity> spuInfos = spuInfoService.getSpuInfosBySkuIds(skuIds);
+        return R.ok().setData(spuInfos);
+    }
+
     /**
      * 信息
      */
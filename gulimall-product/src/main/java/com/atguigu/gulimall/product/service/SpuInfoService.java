@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.atguigu.common.utils.PageUtils;
 import com.atguigu.gulimall.product.entity.SpuInfoEntity;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -27,5 +28,7 @@ public interface SpuInfoService extends IService<SpuInfoEntity> {
     void up(Long spuId);
 
     SpuInfoEntity getSpuInfoBySkuId(Long skuId);
+
+    Map<Long, SpuInfoEntity> getSpuInfosBySkuIds(List<Long> skuIds);
 }
 
@@ -323,4 +323,27 @@ public class SpuInfoServiceImpl extends ServiceImpl<SpuInfoDao, SpuInfoEntity> i
         return getById(spuId);
     }
 
+    @Override
+    public Map<Long, SpuInfoEntity> getSpuInfosBySkuIds(List<Long> skuIds) {
+        if (skuIds == null || skuIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        // 两次in查询：先查sku得到spuId，再查所有spu
+        Map<Long, Long> skuSpuIds = skuInfoService.listByIds(skuIds).stream()
+                .collect(Collectors.toMap(SkuInfoEntity::getSkuId, SkuInfoEntity::getSpuId));
+        if (skuSpuIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, SpuInfoEntity> spuInfos = listByIds(new HashSet<>(skuSpuIds.values())).stream()
+                .collect(Collectors.toMap(SpuInfoEntity::getId, spu -> spu));
+        Map<Long, SpuInfoEntity> result = new HashMap<>();
+        skuSpuIds.forEach((skuId, spuId) -> {
+            SpuInfoEntity spuInfo = spuInfos.get(spuId);
+            if (spuInfo != null) {
+                result.put(skuId, spuInfo);
+            }
+        });
+        return result;
+    }
+
 }
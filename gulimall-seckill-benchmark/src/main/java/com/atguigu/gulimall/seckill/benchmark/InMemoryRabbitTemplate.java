@@ -0,0 +1,50 @@
+package com.atguigu.gulimall.seckill.benchmark;
+
+import com.atguigu.common.to.mq.SeckillOrderTo;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存版的rabbitmq，不连接broker，只记录发送过的秒杀订单
+ */
+public class InMemoryRabbitTemplate extends RabbitTemplate {
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final Set<String> orderSns = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public <T> T invoke(OperationsCallback<T> action, com.rabbitmq.client.ConfirmCallback acks,
+                        com.rabbitmq.client.ConfirmCallback nacks) {
+        return action.doInRabbit(this);
+    }
+
+    @Override
+    public void convertAndSend(String exchange, String routingKey, Object object) throws AmqpException {
+        sent.incrementAndGet();
+        if (object instanceof SeckillOrderTo) {
+            orderSns.add(((SeckillOrderTo) object).getOrderSn());
+        }
+    }
+
+    @Override
+    public void waitForConfirmsOrDie(long timeout) throws AmqpException {
+    }
+
+    public long getSent() {
+        return sent.get();
+    }
+
+    public int getDistinctOrderSns() {
+        return orderSns.size();
+    }
+
+    public void reset() {
+        sent.set(0);
+        orderSns.clear();
+    }
+}
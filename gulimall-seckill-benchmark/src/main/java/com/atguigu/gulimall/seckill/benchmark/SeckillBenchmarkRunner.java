@@ -0,0 +1,23 @@
+package com.atguigu.gulimall.seckill.benchmark;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 运行秒杀的JMH基准
+ * mvn -pl gulimall-seckill-benchmark exec:exec -Dbenchmark.args="8"
+ * 参数：压测线程数，默认1
+ */
+public class SeckillBenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        Options options = new OptionsBuilder()
+                .include(SeckillKillBenchmark.class.getSimpleName())
+                .threads(threads)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,235 @@
+package com.atguigu.gulimall.seckill.benchmark;
+
+import com.alibaba.fastjson.JSON;
+import com.atguigu.common.id.SnowflakeIdGenerator;
+import com.atguigu.common.vo.MemberRespVo;
+import com.atguigu.gulimall.seckill.component.SeckillOrderPublisher;
+import com.atguigu.gulimall.seckill.component.SeckillSkuIndex;
+import com.atguigu.gulimall.seckill.component.SeckillSoldOutGate;
+import com.atguigu.gulimall.seckill.component.SeckillWaitingRoom;
+import com.atguigu.gulimall.seckill.config.SeckillOrderPublisherProperties;
+import com.atguigu.gulimall.seckill.config.SeckillTicketProperties;
+import com.atguigu.gulimall.seckill.constant.SeckillConstant;
+import com.atguigu.gulimall.seckill.interceptor.LoginUserInterceptor;
+import com.atguigu.gulimall.seckill.service.impl.SeckillServiceImpl;
+import com.atguigu.gulimall.seckill.to.SeckillSkuRedisTo;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisClientConfiguration;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.embedded.RedisServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 压测环境：内嵌redis + 内存版rabbitmq，不启动spring容器，手动装配秒杀服务
+ */
+public class SeckillFixture implements Closeable {
+
+    public static final String KILL_ID = "1_1";
+
+    public static final Long SKU_ID = 1L;
+
+    private static final String APPLICATION_NAME = "gulimall-seckill";
+
+    private final RedisServer redisServer;
+
+    private final JedisConnectionFactory connectionFactory;
+
+    private final RedissonClient redissonClient;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final InMemoryRabbitTemplate rabbitTemplate = new InMemoryRabbitTemplate();
+
+    private final SeckillOrderPublisher orderPublisher = new SeckillOrderPublisher();
+
+    private final SeckillSkuIndex skuIndex = new SeckillSkuIndex();
+
+    private final SeckillSoldOutGate soldOutGate = new SeckillSoldOutGate();
+
+    private final SeckillWaitingRoom waitingRoom = new SeckillWaitingRoom();
+
+    private final SeckillServiceImpl seckillService = new SeckillServiceImpl();
+
+    private final SnowflakeIdGenerator idGenerator = new SnowflakeIdGenerator();
+
+    public SeckillFixture(int poolSize) throws IOException {
+        int port = freePort();
+        redisServer = RedisServer.builder().port(port).setting("bind 127.0.0.1").setting("save \"\"").build();
+        redisServer.start();
+
+        JedisPoolConfig poolConfig = new JedisPoolConfig();
+        poolConfig.setMaxTotal(poolSize);
+        poolConfig.setMaxIdle(poolSize);
+        connectionFactory = new JedisConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port),
+                JedisClientConfiguration.builder().usePooling().poolConfig(poolConfig).build());
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+
+        Config config = new Config();
+        config.useSingleServer().setAddress("redis://127.0.0.1:" + port);
+        redissonClient = Redisson.create(config);
+
+        SeckillOrderPublisherProperties publisherProperties = new SeckillOrderPublisherProperties();
+        publisherProperties.setWalDir(Files.createTempDirectory("seckill-benchmark").toString());
+        ReflectionTestUtils.setField(orderPublisher, "rabbitTemplate", rabbitTemplate);
+        ReflectionTestUtils.setField(orderPublisher, "properties", publisherProperties);
+        orderPublisher.start();
+
+        SeckillTicketProperties ticketProperties = new SeckillTicketProperties();
+        ticketProperties.setSecret("gulimall-seckill-benchmark");
+        ticketProperties.setTtl(3600 * 1000L);
+        ReflectionTestUtils.setField(waitingRoom, "properties", ticketProperties);
+        ReflectionTestUtils.setField(waitingRoom, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(waitingRoom, "discoveryClient", new SingleNodeDiscoveryClient(port));
+        ReflectionTestUtils.setField(waitingRoom, "applicationName", APPLICATION_NAME);
+        waitingRoom.init();
+
+        ReflectionTestUtils.setField(soldOutGate, "redissonClient", redissonClient);
+        soldOutGate.init();
+
+        ReflectionTestUtils.setField(skuIndex, "redisTemplate", redisTemplate);
+
+        // 单机压测不需要租用worker id
+        try {
+            idGenerator.assign(1, 0, Long.MAX_VALUE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+
+        ReflectionTestUtils.setField(seckillService, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(seckillService, "redissonClient", redissonClient);
+        ReflectionTestUtils.setField(seckillService, "soldOutGate", soldOutGate);
+        ReflectionTestUtils.setField(seckillService, "skuIndex", skuIndex);
+        ReflectionTestUtils.setField(seckillService, "orderPublisher", orderPublisher);
+        ReflectionTestUtils.setField(seckillService, "waitingRoom", waitingRoom);
+        ReflectionTestUtils.setField(seckillService, "idGenerator", idGenerator);
+    }
+
+    /**
+     * 清空redis，上架一个正在秒杀的商品(sessionId=1, skuId=1, 每人限购1件)
+     */
+    public void seed(int stock, String randomCode) {
+        RedisConnection connection = connectionFactory.getConnection();
+        try {
+            connection.flushDb();
+        } finally {
+            connection.close();
+        }
+        long now = System.currentTimeMillis();
+        SeckillSkuRedisTo redisTo = new SeckillSkuRedisTo();
+        redisTo.setPromotionId(1L);
+        redisTo.setPromotionSessionId(1L);
+        redisTo.setSkuId(SKU_ID);
+        redisTo.setSeckillPrice(new BigDecimal("1.00"));
+        redisTo.setSeckillCount(stock);
+        redisTo.setSeckillLimit(1);
+        redisTo.setStartTime(now - 60 * 1000);
+        redisTo.setEndTime(now + 3600 * 1000);
+        redisTo.setRandomCode(randomCode);
+        redisTemplate.opsForHash().put(SeckillConstant.SKUKILL_CACHE_PREFIX, KILL_ID, JSON.toJSONString(redisTo));
+        redisTemplate.opsForValue().set(SeckillConstant.SKU_STOCK_SEMAPHORE + randomCode, String.valueOf(stock));
+        redisTemplate.opsForZSet().add(SeckillConstant.SKU_SESSIONS_INDEX_PREFIX + SKU_ID, KILL_ID, redisTo.getEndTime());
+        skuIndex.clear();
+        rabbitTemplate.reset();
+    }
+
+    /**
+     * 模拟登录拦截器，把当前线程设置成某个会员
+     */
+    public static void login(long memberId) {
+        MemberRespVo member = new MemberRespVo();
+        member.setId(memberId);
+        LoginUserInterceptor.loginUser.set(member);
+    }
+
+    public long remainingStock(String randomCode) {
+        String value = redisTemplate.opsForValue().get(SeckillConstant.SKU_STOCK_SEMAPHORE + randomCode);
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    /**
+     * 等待发送线程把缓冲区里的订单都发出去
+     */
+    public void awaitPublished(long expected, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (rabbitTemplate.getSent() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    public SeckillServiceImpl getSeckillService() {
+        return seckillService;
+    }
+
+    public SeckillSoldOutGate getSoldOutGate() {
+        return soldOutGate;
+    }
+
+    public InMemoryRabbitTemplate getRabbitTemplate() {
+        return rabbitTemplate;
+    }
+
+    @Override
+    public void close() {
+        try {
+            orderPublisher.stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        redissonClient.shutdown();
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    /**
+     * 单机压测：注册中心里只有本节点，令牌桶按一个节点分配
+     */
+    private static class SingleNodeDiscoveryClient implements DiscoveryClient {
+
+        private final List<ServiceInstance> instances;
+
+        SingleNodeDiscoveryClient(int port) {
+            instances = Collections.singletonList(
+                    new DefaultServiceInstance(APPLICATION_NAME + "-1", APPLICATION_NAME, "127.0.0.1", port, false));
+        }
+
+        @Override
+        public String description() {
+            return "seckill benchmark";
+        }
+
+        @Override
+        public List<ServiceInstance> getInstances(String serviceId) {
+            return APPLICATION_NAME.equals(serviceId) ? instances : Collections.emptyList();
+        }
+
+        @Override
+        public List<String> getServices() {
+            return Collections.singletonList(APPLICATION_NAME);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
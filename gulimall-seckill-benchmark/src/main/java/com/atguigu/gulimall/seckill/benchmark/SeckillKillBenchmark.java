@@ -0,0 +1,116 @@
+package com.atguigu.gulimall.seckill.benchmark;
+
+import com.atguigu.gulimall.seckill.service.impl.SeckillServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 秒杀接口的微基准：分别测量各个拦截层和完整抢购路径的吞吐
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SeckillKillBenchmark {
+
+    private static final String RANDOM_CODE = "benchmark";
+
+    private static final String SOLD_OUT_CODE = "benchmark-soldout";
+
+    @State(Scope.Benchmark)
+    public static class Env {
+
+        SeckillFixture fixture;
+
+        SeckillServiceImpl seckillService;
+
+        /**
+         * 每次抢购使用不同的会员，避免被一人一单拦下
+         */
+        final AtomicLong members = new AtomicLong();
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            fixture = new SeckillFixture(256);
+            // 库存足够大，测量期间不会卖完
+            fixture.seed(Integer.MAX_VALUE / 2, RANDOM_CODE);
+            fixture.getSoldOutGate().markSoldOut(SOLD_OUT_CODE, 0);
+            seckillService = fixture.getSeckillService();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            fixture.close();
+        }
+    }
+
+    /**
+     * 每个压测线程固定一个会员和一张ticket，用来测量不需要换人的拦截路径
+     */
+    @State(Scope.Thread)
+    public static class Member {
+
+        long memberId;
+
+        String ticket;
+
+        @Setup(Level.Trial)
+        public void setUp(Env env) {
+            memberId = env.members.incrementAndGet();
+            SeckillFixture.login(memberId);
+            ticket = env.seckillService.getKillTicket(SeckillFixture.KILL_ID);
+        }
+    }
+
+    /**
+     * 完整抢购路径：领ticket + lua扣库存 + 订单放入发送缓冲区
+     */
+    @Benchmark
+    public String admitted(Env env) {
+        SeckillFixture.login(env.members.incrementAndGet());
+        String ticket = env.seckillService.getKillTicket(SeckillFixture.KILL_ID);
+        return env.seckillService.kill(SeckillFixture.KILL_ID, RANDOM_CODE, 1, ticket);
+    }
+
+    /**
+     * 没有ticket，在本地验签时被拒绝
+     */
+    @Benchmark
+    public String rejectedWithoutTicket(Env env, Member member) {
+        SeckillFixture.login(member.memberId);
+        return env.seckillService.kill(SeckillFixture.KILL_ID, RANDOM_CODE, 1, "0.invalid");
+    }
+
+    /**
+     * 已售罄，在本地售罄标记处被拒绝
+     */
+    @Benchmark
+    public String rejectedSoldOut(Env env, Member member) {
+        SeckillFixture.login(member.memberId);
+        return env.seckillService.kill(SeckillFixture.KILL_ID, SOLD_OUT_CODE, 1, member.ticket);
+    }
+
+    /**
+     * 同一个会员重复使用已经核销的ticket，在redis的lua脚本里被拒绝
+     */
+    @Benchmark
+    public String rejectedDuplicate(Env env, Member member) {
+        SeckillFixture.login(member.memberId);
+        return env.seckillService.kill(SeckillFixture.KILL_ID, RANDOM_CODE, 1, member.ticket);
+    }
+}
@@ -0,0 +1,117 @@
+package com.atguigu.gulimall.seckill.benchmark;
+
+import com.atguigu.gulimall.seckill.service.impl.SeckillServiceImpl;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 秒杀压测：在不同并发下模拟抢购，统计吞吐、延迟，并校验没有超卖/少卖
+ * mvn -pl gulimall-seckill-benchmark exec:exec -Dbenchmark.main=com.atguigu.gulimall.seckill.benchmark.SeckillLoadDriver -Dbenchmark.args="2000 5 1,8,32,128"
+ * 参数：库存 抢购人数倍数 并发列表
+ */
+public class SeckillLoadDriver {
+
+    public static void main(String[] args) throws Exception {
+        int stock = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int demand = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int[] levels = args.length > 2
+                ? Arrays.stream(args[2].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 8, 32, 128};
+
+        int maxLevel = Arrays.stream(levels).max().orElse(1);
+        boolean failed = false;
+        try (SeckillFixture fixture = new SeckillFixture(maxLevel * 2)) {
+            System.out.printf("%-12s%-10s%-12s%-10s%-10s%-8s%-11s%-8s%-8s%s%n",
+                    "concurrency", "attempts", "kills/s", "p50(us)", "p99(us)",
+                    "sold", "remaining", "orders", "unique", "result");
+            AtomicLong members = new AtomicLong();
+            for (int concurrency : levels) {
+                failed |= !runLevel(fixture, members, stock, stock * demand, concurrency);
+            }
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean runLevel(SeckillFixture fixture, AtomicLong members, int stock, int attempts,
+                                    int concurrency) throws InterruptedException {
+        String randomCode = UUID.randomUUID().toString().replace("-", "");
+        fixture.seed(stock, randomCode);
+        SeckillServiceImpl seckillService = fixture.getSeckillService();
+
+        long[] latencies = new long[attempts];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger sold = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(concurrency);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    int n;
+                    while ((n = next.getAndIncrement()) < attempts) {
+                        SeckillFixture.login(members.incrementAndGet());
+                        long begin = System.nanoTime();
+                        String ticket = seckillService.getKillTicket(SeckillFixture.KILL_ID);
+                        String orderSn = ticket == null ? null
+                                : seckillService.kill(SeckillFixture.KILL_ID, randomCode, 1, ticket);
+                        latencies[n] = System.nanoTime() - begin;
+                        if (orderSn != null) {
+                            sold.incrementAndGet();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        fixture.awaitPublished(sold.get(), 10000);
+        long remaining = fixture.remainingStock(randomCode);
+        long orders = fixture.getRabbitTemplate().getSent();
+        int unique = fixture.getRabbitTemplate().getDistinctOrderSns();
+
+        // 抢购人数大于库存，正确的结果是刚好卖完，订单号不重复
+        String result;
+        if (sold.get() > stock || remaining < 0) {
+            result = "OVERSOLD";
+        } else if (sold.get() + remaining != stock) {
+            result = "STOCK MISMATCH";
+        } else if (remaining > 0) {
+            result = "UNDERSOLD";
+        } else if (orders != sold.get() || unique != sold.get()) {
+            result = "ORDER MISMATCH";
+        } else {
+            result = "OK";
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("%-12d%-10d%-12.0f%-10d%-10d%-8d%-11d%-8d%-8d%s%n",
+                concurrency, attempts, attempts * 1e9 / elapsed,
+                percentile(latencies, 0.50) / 1000, percentile(latencies, 0.99) / 1000,
+                sold.get(), remaining, orders, unique, result);
+        return "OK".equals(result);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
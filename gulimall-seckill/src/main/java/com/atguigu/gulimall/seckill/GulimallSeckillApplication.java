@@ -41,7 +41,7 @@ import org.springframework.session.data.redis.config.annotation.web.http.EnableR
  *      url请求可以设置统一返回: WebCallbackManager
  */
 
-//@EnableRabbit  不监听队列，只发送队列的话，可以不用这个注解
+@EnableRabbit
 @EnableRedisHttpSession
 @EnableFeignClients
 @EnableDiscoveryClient
@@ -0,0 +1,148 @@
+package com.atguigu.gulimall.seckill.component;
+
+import com.alibaba.fastjson.JSON;
+import com.atguigu.gulimall.seckill.config.SeckillLifecycleProperties;
+import com.atguigu.gulimall.seckill.constant.SeckillConstant;
+import com.atguigu.gulimall.seckill.to.SeckillSkuRedisTo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * 秒杀数据的生命周期
+ * 1. 回收：场次结束 + grace 之后，删除场次、hash中的商品、库存信号量和sku索引中的过期数据以及各节点的售罄标记，保证内存占用不会随运行时间增长
+ * 2. 预热：场次开始前 prewarm 时间内，提前把场次内商品加载到本地的sku索引缓存
+ */
+@Slf4j
+@Component
+public class SeckillLifecycle {
+
+    @Autowired
+    StringRedisTemplate redisTemplate;
+
+    @Autowired
+    SeckillSessionTimeline sessionTimeline;
+
+    @Autowired
+    SeckillSkuIndex skuIndex;
+
+    @Autowired
+    SeckillLifecycleProperties properties;
+
+    @Autowired
+    SeckillSoldOutGate soldOutGate;
+
+    /**
+     * 已经预热过的场次(开始时间)，避免每次调度重复加载
+     */
+    private final Set<Long> warmed = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    /**
+     * 预热即将开始的场次，依赖本地时间线已经刷新
+     */
+    public void prewarm() {
+        long now = System.currentTimeMillis();
+        warmed.removeIf(start -> start < now - properties.getGrace());
+        for (SeckillSessionTimeline.SessionSnapshot session : sessionTimeline.upcoming(now, now + properties.getPrewarm())) {
+            if (!warmed.add(session.getStartTime())) {
+                continue;
+            }
+            session.getSkus().forEach(sku -> skuIndex.get(sku.getSkuId()));
+            log.info("秒杀场次{}即将开始，预热{}个商品", session.getStartTime(), session.getSkus().size());
+        }
+    }
+
+    /**
+     * 回收所有已经结束超过 grace 的秒杀数据；多个节点同时执行也没有问题，调用方加锁只是为了避免重复扫描
+     */
+    public void reclaimExpired() {
+        long deadline = System.currentTimeMillis() - properties.getGrace();
+        long usedBefore = usedMemory();
+
+        // 1. 场次：时间线的score是开始时间，结束时间要从member中解析
+        int sessions = 0;
+        Set<String> members = redisTemplate.opsForZSet().rangeByScore(SeckillConstant.SESSIONS_TIMELINE, Double.NEGATIVE_INFINITY, deadline);
+        if (members != null) {
+            for (String member : members) {
+                if (Long.parseLong(member.split("_")[1]) < deadline) {
+                    redisTemplate.delete(SeckillConstant.SESSIONS_CACHE_PREFIX + member);
+                    redisTemplate.opsForZSet().remove(SeckillConstant.SESSIONS_TIMELINE, member);
+                    sessions++;
+                }
+            }
+        }
+
+        // 2. 商品：hash本身没有按field过期，分批hscan找出结束的商品，连同它的库存信号量和sku索引一起删除
+        int skus = 0;
+        List<String> fields = new ArrayList<>();
+        List<SeckillSkuRedisTo> expired = new ArrayList<>();
+        try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(SeckillConstant.SKUKILL_CACHE_PREFIX,
+                ScanOptions.scanOptions().count(properties.getBatchSize()).build())) {
+            while (cursor.hasNext()) {
+                Map.Entry<Object, Object> entry = cursor.next();
+                SeckillSkuRedisTo redisTo = JSON.parseObject((String) entry.getValue(), SeckillSkuRedisTo.class);
+                if (redisTo.getEndTime() < deadline) {
+                    fields.add((String) entry.getKey());
+                    expired.add(redisTo);
+                }
+                if (fields.size() >= properties.getBatchSize()) {
+                    skus += deleteSkus(fields, expired, deadline);
+                }
+            }
+        } catch (IOException e) {
+            log.error("关闭秒杀商品扫描游标失败", e);
+        }
+        skus += deleteSkus(fields, expired, deadline);
+
+        long usedAfter = usedMemory();
+        log.info("秒杀过期数据回收完成：场次{}个，商品{}个，redis内存{} -> {}，回收{}字节",
+                sessions, skus, usedBefore, usedAfter, Math.max(0, usedBefore - usedAfter));
+    }
+
+    private int deleteSkus(List<String> fields, List<SeckillSkuRedisTo> expired, long deadline) {
+        int size = fields.size();
+        if (size == 0) {
+            return 0;
+        }
+        List<String> batchFields = new ArrayList<>(fields);
+        List<SeckillSkuRedisTo> batch = new ArrayList<>(expired);
+        fields.clear();
+        expired.clear();
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.opsForHash().delete(SeckillConstant.SKUKILL_CACHE_PREFIX, batchFields.toArray());
+                for (SeckillSkuRedisTo redisTo : batch) {
+                    operations.delete(SeckillConstant.SKU_STOCK_SEMAPHORE + redisTo.getRandomCode());
+                    operations.delete(SeckillConstant.SKU_STOCK_GENERATION + redisTo.getRandomCode());
+                    // 只删除索引中已经结束的场次，zset为空时redis会自动删除key
+                    operations.opsForZSet().removeRangeByScore(SeckillConstant.SKU_SESSIONS_INDEX_PREFIX + redisTo.getSkuId(),
+                            Double.NEGATIVE_INFINITY, deadline);
+                }
+                return null;
+            }
+        });
+        // 所有节点删除这些商品的售罄标记
+        soldOutGate.forget(batch.stream().map(SeckillSkuRedisTo::getRandomCode).collect(Collectors.toList()));
+        return size;
+    }
+
+    private long usedMemory() {
+        Properties info = redisTemplate.execute((RedisCallback<Properties>) connection -> connection.info("memory"));
+        String used = info == null ? null : info.getProperty("used_memory");
+        return used == null ? 0 : Long.parseLong(used);
+    }
+}
@@ -0,0 +1,466 @@
+package com.atguigu.gulimall.seckill.component;
+
+import com.alibaba.fastjson.JSON;
+import com.atguigu.common.to.mq.SeckillOrderTo;
+import com.atguigu.gulimall.seckill.config.SeckillOrderPublisherProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 秒杀订单异步发送
+ * 1. 秒杀线程把订单交给预写日志线程，订单fsync到本地日志文件后publish才返回，进程崩溃也不会丢失已经扣过库存的订单
+ * 2. 日志线程组提交：一次写入、一次fsync同时完成所有排队的订单，之后交给发送线程
+ * 3. 发送线程批量发送，用publisher confirm等整批确认；日志按段滚动，一段的订单全部确认后删除这个段
+ * 4. 发送失败、缓冲区满的段保留在磁盘上，发送线程空闲时整段重放；启动时重放上次遗留的段
+ * 重放可能重复发送已经确认过的订单，由oms_order上订单号的唯一键去重
+ */
+@Slf4j
+@Component
+public class SeckillOrderPublisher {
+
+    private static final String EXCHANGE = "order-event-exchange";
+
+    private static final String ROUTING_KEY = "order.seckill.order";
+
+    private static final String WAL_PREFIX = "seckill-order-wal-";
+
+    private static final String WAL_SUFFIX = ".log";
+
+    /**
+     * 旧版本的溢写文件，启动时一起重放
+     */
+    private static final String LEGACY_SPILL_FILE = "seckill-order-spill.log";
+
+    @Autowired
+    RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    SeckillOrderPublisherProperties properties;
+
+    /**
+     * 等待写入日志的订单
+     */
+    private BlockingQueue<PendingOrder> incoming;
+
+    /**
+     * 已经落盘、等待发送的订单
+     */
+    private BlockingQueue<PendingOrder> buffer;
+
+    /**
+     * 需要整段重放的日志段
+     */
+    private final ConcurrentLinkedQueue<Segment> replays = new ConcurrentLinkedQueue<>();
+
+    private Path walDir;
+
+    private long nextSegmentId;
+
+    private Segment current;
+
+    private Thread walWriter;
+
+    private Thread publisher;
+
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void start() throws IOException {
+        incoming = new ArrayBlockingQueue<>(properties.getCapacity());
+        buffer = new ArrayBlockingQueue<>(properties.getCapacity());
+        if (!StringUtils.hasText(properties.getWalDir())) {
+            throw new IllegalStateException("未配置秒杀订单日志目录 gulimall.seckill.order-publisher.wal-dir");
+        }
+        walDir = Paths.get(properties.getWalDir());
+        Files.createDirectories(walDir);
+        recover();
+
+        walWriter = new Thread(this::walLoop, "seckill-order-wal");
+        walWriter.setDaemon(true);
+        walWriter.start();
+        publisher = new Thread(this::publishLoop, "seckill-order-publisher");
+        publisher.setDaemon(true);
+        publisher.start();
+    }
+
+    /**
+     * 订单写入本地日志并fsync后返回，之后由发送线程投递到MQ
+     *
+     * @throws IllegalStateException 日志写入失败或者超时，订单没有保存，调用方需要归还库存
+     */
+    public void publish(SeckillOrderTo orderTo) {
+        PendingOrder order = new PendingOrder(orderTo);
+        try {
+            if (!running || !incoming.offer(order, properties.getWalTimeout(), TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("秒杀订单日志队列已满");
+            }
+            try {
+                order.durable.get(properties.getWalTimeout(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                if (order.claimed.compareAndSet(false, true)) {
+                    // 日志线程还没有取走这个订单，撤销后不会再写入
+                    throw new IllegalStateException("等待秒杀订单写入日志超时", e);
+                }
+                // 已经在写入中，等待结果
+                order.durable.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待秒杀订单写入日志时被中断", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("秒杀订单写入日志失败", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        walWriter.interrupt();
+        walWriter.join(properties.getWalTimeout());
+        publisher.interrupt();
+        publisher.join(properties.getConfirmTimeout());
+        // 没有发完的订单都已经在日志里，下次启动时重放
+    }
+
+    private void walLoop() {
+        List<PendingOrder> group = new ArrayList<>();
+        while (running || !incoming.isEmpty()) {
+            try {
+                PendingOrder first = incoming.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    // 空闲时滚动当前段，已经全部确认的段可以尽快删除
+                    if (current != null && current.written > 0) {
+                        seal();
+                    }
+                    continue;
+                }
+                group.add(first);
+                incoming.drainTo(group);
+                // 跳过等待超时、已经被调用方撤销的订单
+                group.removeIf(order -> !order.claimed.compareAndSet(false, true));
+                if (!group.isEmpty()) {
+                    append(group);
+                }
+            } catch (InterruptedException e) {
+                // 停止时把已经排队的订单写完
+                running = false;
+                Thread.interrupted();
+            } catch (IOException e) {
+                log.error("{}条秒杀订单写入日志失败", group.size(), e);
+                group.forEach(order -> order.durable.completeExceptionally(e));
+                // 写入失败的段可能不完整，滚动到新的段
+                if (current != null) {
+                    seal();
+                }
+            } finally {
+                group.clear();
+            }
+        }
+        if (current != null) {
+            seal();
+        }
+    }
+
+    /**
+     * 组提交：一次写入一次fsync，落盘后唤醒所有等待的秒杀线程
+     */
+    private void append(List<PendingOrder> group) throws IOException {
+        if (current == null) {
+            current = new Segment(walDir.resolve(WAL_PREFIX + nextSegmentId++ + WAL_SUFFIX));
+            current.channel = FileChannel.open(current.path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+        StringBuilder lines = new StringBuilder(group.size() * 160);
+        for (PendingOrder order : group) {
+            lines.append(JSON.toJSONString(order.orderTo)).append('\n');
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        long size = current.channel.position();
+        try {
+            while (bytes.hasRemaining()) {
+                current.channel.write(bytes);
+            }
+            current.channel.force(false);
+        } catch (IOException e) {
+            // 这一组订单会通知调用方失败并归还库存，尽量截掉写了一半的内容，避免重放时发出去
+            try {
+                current.channel.truncate(size);
+                current.channel.force(false);
+            } catch (IOException ignored) {
+                log.error("截断秒杀订单日志{}失败，重放时可能包含写入失败的订单", current.path);
+            }
+            throw e;
+        }
+
+        Segment segment = current;
+        segment.appended(group.size());
+        boolean buffered = true;
+        for (PendingOrder order : group) {
+            order.segment = segment;
+            order.durable.complete(null);
+            if (buffered && !buffer.offer(order)) {
+                // 发送跟不上，这一段之后整段从磁盘重放
+                buffered = false;
+                handle(segment.failed(), segment);
+            }
+        }
+        if (segment.written >= properties.getSegmentSize()) {
+            seal();
+        }
+    }
+
+    private void seal() {
+        Segment segment = current;
+        current = null;
+        try {
+            if (segment.channel != null) {
+                segment.channel.close();
+            }
+        } catch (IOException e) {
+            log.warn("关闭秒杀订单日志{}失败", segment.path, e);
+        }
+        handle(segment.seal(), segment);
+    }
+
+    private void publishLoop() {
+        List<PendingOrder> batch = new ArrayList<>(properties.getBatchSize());
+        while (running || !buffer.isEmpty()) {
+            try {
+                PendingOrder first = buffer.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    // 空闲的时候重放日志段
+                    replay();
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, properties.getBatchSize() - 1);
+                List<SeckillOrderTo> orders = batch.stream().map(order -> order.orderTo).collect(Collectors.toList());
+                Map<Segment, Integer> counts = new IdentityHashMap<>();
+                batch.forEach(order -> counts.merge(order.segment, 1, Integer::sum));
+                if (send(orders)) {
+                    counts.forEach((segment, count) -> handle(segment.confirmed(count), segment));
+                } else {
+                    // 整批是否部分送达无法确定，涉及的段整段重放
+                    counts.keySet().forEach(segment -> handle(segment.failed(), segment));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 整批发送并等待broker确认
+     */
+    private boolean send(List<SeckillOrderTo> batch) {
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (SeckillOrderTo orderTo : batch) {
+                    operations.convertAndSend(EXCHANGE, ROUTING_KEY, orderTo);
+                }
+                operations.waitForConfirmsOrDie(properties.getConfirmTimeout());
+                return null;
+            });
+            return true;
+        } catch (Exception e) {
+            log.error("秒杀订单批量发送失败，{}条订单稍后从日志重放", batch.size(), e);
+            return false;
+        }
+    }
+
+    private void handle(Segment.Action action, Segment segment) {
+        if (action == Segment.Action.DELETE) {
+            try {
+                Files.deleteIfExists(segment.path);
+            } catch (IOException e) {
+                log.warn("删除秒杀订单日志{}失败，下次启动时重放", segment.path, e);
+            }
+        } else if (action == Segment.Action.REPLAY) {
+            replays.add(segment);
+        }
+    }
+
+    /**
+     * 整段重放，中途失败时把没有确认的部分原子地写回这个段，下次从这里继续
+     */
+    private void replay() {
+        Segment segment;
+        while (running && (segment = replays.peek()) != null) {
+            if (!Files.exists(segment.path)) {
+                replays.poll();
+                continue;
+            }
+            try {
+                List<SeckillOrderTo> orders = new ArrayList<>();
+                for (String line : Files.readAllLines(segment.path, StandardCharsets.UTF_8)) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        orders.add(JSON.parseObject(line, SeckillOrderTo.class));
+                    } catch (Exception e) {
+                        // 崩溃时写了一半的最后一行，这笔订单没有返回成功，调用方已经归还库存
+                        log.warn("跳过秒杀订单日志{}中不完整的记录：{}", segment.path.getFileName(), line);
+                    }
+                }
+                for (int i = 0; i < orders.size(); i += properties.getBatchSize()) {
+                    if (!send(orders.subList(i, Math.min(i + properties.getBatchSize(), orders.size())))) {
+                        List<String> rest = orders.subList(i, orders.size()).stream().map(JSON::toJSONString).collect(Collectors.toList());
+                        Path tmp = segment.path.resolveSibling(segment.path.getFileName() + ".tmp");
+                        Files.write(tmp, rest, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.SYNC);
+                        Files.move(tmp, segment.path, StandardCopyOption.ATOMIC_MOVE);
+                        return;
+                    }
+                }
+                Files.deleteIfExists(segment.path);
+                replays.poll();
+                log.info("重放秒杀订单日志{}，共{}条", segment.path.getFileName(), orders.size());
+            } catch (IOException e) {
+                log.error("重放秒杀订单日志{}失败", segment.path, e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 启动时把上次遗留的日志段加入重放队列，新的段编号接在后面
+     */
+    private void recover() throws IOException {
+        List<Path> leftovers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(walDir, WAL_PREFIX + "*" + WAL_SUFFIX)) {
+            files.forEach(leftovers::add);
+        }
+        leftovers.sort((a, b) -> Long.compare(segmentId(a), segmentId(b)));
+        for (Path path : leftovers) {
+            nextSegmentId = Math.max(nextSegmentId, segmentId(path) + 1);
+        }
+        Path legacy = walDir.resolve(LEGACY_SPILL_FILE);
+        if (Files.exists(legacy)) {
+            Path migrated = walDir.resolve(WAL_PREFIX + nextSegmentId++ + WAL_SUFFIX);
+            Files.move(legacy, migrated, StandardCopyOption.ATOMIC_MOVE);
+            leftovers.add(migrated);
+        }
+        for (Path path : leftovers) {
+            replays.add(new Segment(path));
+        }
+        if (!leftovers.isEmpty()) {
+            log.info("发现{}个未发完的秒杀订单日志，等待重放", leftovers.size());
+        }
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(WAL_PREFIX.length(), name.length() - WAL_SUFFIX.length()));
+    }
+
+    private static class PendingOrder {
+
+        private final SeckillOrderTo orderTo;
+
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+
+        /**
+         * 日志线程取走订单和调用方超时撤销，先到的一方生效
+         */
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        private Segment segment;
+
+        PendingOrder(SeckillOrderTo orderTo) {
+            this.orderTo = orderTo;
+        }
+    }
+
+    /**
+     * 日志段：写入数、确认数和状态由日志线程和发送线程共同修改，用段本身加锁
+     * 滚动之后(sealed)才能删除或者重放：全部确认则删除，有发送失败的则整段重放
+     */
+    private static class Segment {
+
+        enum Action {NONE, DELETE, REPLAY}
+
+        private final Path path;
+
+        private FileChannel channel;
+
+        private int written;
+
+        private int confirmed;
+
+        private boolean sealed;
+
+        private boolean failed;
+
+        private boolean done;
+
+        Segment(Path path) {
+            this.path = path;
+        }
+
+        synchronized void appended(int count) {
+            written += count;
+        }
+
+        synchronized Action seal() {
+            sealed = true;
+            return check();
+        }
+
+        synchronized Action confirmed(int count) {
+            confirmed += count;
+            return check();
+        }
+
+        synchronized Action failed() {
+            failed = true;
+            return check();
+        }
+
+        private Action check() {
+            if (!sealed || done) {
+                return Action.NONE;
+            }
+            if (failed) {
+                done = true;
+                return Action.REPLAY;
+            }
+            if (confirmed >= written) {
+                done = true;
+                return Action.DELETE;
+            }
+            return Action.NONE;
+        }
+    }
+}
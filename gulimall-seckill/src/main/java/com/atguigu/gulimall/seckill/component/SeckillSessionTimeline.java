@@ -0,0 +1,108 @@
+package com.atguigu.gulimall.seckill.component;
+
+import com.alibaba.fastjson.JSON;
+import com.atguigu.gulimall.seckill.constant.SeckillConstant;
+import com.atguigu.gulimall.seckill.to.SeckillSkuRedisTo;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.BoundHashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 秒杀场次时间线
+ * 1. redis中用一个zset记录所有场次，score为开始时间，member为 开始时间_结束时间，上架场次的时候写入，代替keys扫描
+ * 2. 本地保存一份按开始时间排序的快照，整体构建好之后再替换引用，读的时候不加锁，也不访问redis
+ */
+@Slf4j
+@Component
+public class SeckillSessionTimeline {
+
+    @Autowired
+    StringRedisTemplate redisTemplate;
+
+    private volatile NavigableMap<Long, SessionSnapshot> snapshot = Collections.emptyNavigableMap();
+
+    /**
+     * 登记一个场次到时间线
+     */
+    public void addSession(long startTime, long endTime) {
+        redisTemplate.opsForZSet().add(SeckillConstant.SESSIONS_TIMELINE, startTime + "_" + endTime, startTime);
+    }
+
+    /**
+     * 从redis重新构建本地快照，只保留还没有结束的场次
+     */
+    public void refresh() {
+        long now = System.currentTimeMillis();
+        Set<String> sessions = redisTemplate.opsForZSet().range(SeckillConstant.SESSIONS_TIMELINE, 0, -1);
+        NavigableMap<Long, SessionSnapshot> timeline = new TreeMap<>();
+        if (sessions != null) {
+            BoundHashOperations<String, String, String> hashOps = redisTemplate.boundHashOps(SeckillConstant.SKUKILL_CACHE_PREFIX);
+            for (String session : sessions) {
+                String[] s = session.split("_");
+                long start = Long.parseLong(s[0]);
+                long end = Long.parseLong(s[1]);
+                if (end < now) {
+                    continue;
+                }
+                List<SeckillSkuRedisTo> skus = Collections.emptyList();
+                List<String> skuKeys = redisTemplate.opsForList().range(SeckillConstant.SESSIONS_CACHE_PREFIX + session, 0, -1);
+                if (skuKeys != null && !skuKeys.isEmpty()) {
+                    List<String> list = hashOps.multiGet(skuKeys);
+                    if (list != null) {
+                        skus = Collections.unmodifiableList(list.stream().filter(Objects::nonNull)
+                                .map(item -> JSON.parseObject(item, SeckillSkuRedisTo.class))
+                                .collect(Collectors.toList()));
+                    }
+                }
+                // 同一时间开始的场次合并到一起
+                SessionSnapshot exist = timeline.get(start);
+                if (exist != null) {
+                    List<SeckillSkuRedisTo> merged = new ArrayList<>(exist.getSkus());
+                    merged.addAll(skus);
+                    skus = Collections.unmodifiableList(merged);
+                    end = Math.max(end, exist.getEndTime());
+                }
+                timeline.put(start, new SessionSnapshot(start, end, skus));
+            }
+        }
+        snapshot = Collections.unmodifiableNavigableMap(timeline);
+        log.info("秒杀场次时间线已刷新，共{}个场次", timeline.size());
+    }
+
+    /**
+     * 找到当前时间所在的场次；先按开始时间二分定位，再往前找到第一个还没结束的场次
+     */
+    public SessionSnapshot current(long time) {
+        for (SessionSnapshot session : snapshot.headMap(time, true).descendingMap().values()) {
+            if (time <= session.getEndTime()) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 开始时间在[from, to]之间的场次
+     */
+    public Collection<SessionSnapshot> upcoming(long from, long to) {
+        return snapshot.subMap(from, true, to, true).values();
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class SessionSnapshot {
+
+        private final long startTime;
+
+        private final long endTime;
+
+        private final List<SeckillSkuRedisTo> skus;
+    }
+}
@@ -0,0 +1,72 @@
+package com.atguigu.gulimall.seckill.component;
+
+import com.alibaba.fastjson.JSON;
+import com.atguigu.gulimall.seckill.constant.SeckillConstant;
+import com.atguigu.gulimall.seckill.to.SeckillSkuRedisTo;
+import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * skuId -> 当前或者下一场秒杀信息的索引
+ * 1. redis中每个sku一个zset，member为秒杀商品hash的key(sessionId_skuId)，score为场次结束时间，
+ *    取第一个结束时间在当前时间之后的就是当前或下一场
+ * 2. 本地读穿缓存，没有秒杀的sku也缓存空结果，商品详情页不用每次都访问redis
+ */
+@Component
+public class SeckillSkuIndex {
+
+    private static final long LOCAL_TTL = 60 * 1000;
+
+    private static final int LOCAL_MAX_SIZE = 100000;
+
+    @Autowired
+    StringRedisTemplate redisTemplate;
+
+    private final Map<Long, CacheEntry> cache = new ConcurrentHashMap<>();
+
+    public SeckillSkuRedisTo get(Long skuId) {
+        long now = System.currentTimeMillis();
+        CacheEntry entry = cache.get(skuId);
+        if (entry != null && now < entry.expireAt) {
+            return entry.value;
+        }
+        SeckillSkuRedisTo value = load(skuId, now);
+        long expireAt = now + LOCAL_TTL;
+        if (value != null) {
+            // 场次结束后要重新查找下一场
+            expireAt = Math.min(expireAt, value.getEndTime() + 1);
+        }
+        if (cache.size() >= LOCAL_MAX_SIZE) {
+            cache.clear();
+        }
+        cache.put(skuId, new CacheEntry(value, expireAt));
+        return value;
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    private SeckillSkuRedisTo load(Long skuId, long now) {
+        Set<String> keys = redisTemplate.opsForZSet().rangeByScore(SeckillConstant.SKU_SESSIONS_INDEX_PREFIX + skuId, now, Double.POSITIVE_INFINITY, 0, 1);
+        if (keys == null || keys.isEmpty()) {
+            return null;
+        }
+        Object json = redisTemplate.opsForHash().get(SeckillConstant.SKUKILL_CACHE_PREFIX, keys.iterator().next());
+        return json == null ? null : JSON.parseObject((String) json, SeckillSkuRedisTo.class);
+    }
+
+    @AllArgsConstructor
+    private static class CacheEntry {
+
+        private final SeckillSkuRedisTo value;
+
+        private final long expireAt;
+    }
+}
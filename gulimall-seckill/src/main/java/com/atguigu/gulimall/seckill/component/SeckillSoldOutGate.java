@@ -0,0 +1,125 @@
+package com.atguigu.gulimall.seckill.component;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地售罄标记，key为商品随机码
+ * 1. 某个商品的库存信号量被扣光以后，在本地打上售罄标记，之后的秒杀请求直接在内存里拒绝，不再访问redis
+ * 2. 标记通过redis的发布订阅同步给其他秒杀节点
+ * 3. 补库存或者取消订单归还库存时调用reopen，所有节点重新放行
+ * 4. 每次归还库存时redis中的版本号加一，标记和重新放行都带上版本号：
+ * 在归还之前读到库存为0的秒杀请求，它的标记版本号比重新放行的小，晚到也会被忽略，不会把有库存的商品重新关上
+ * 5. 场次回收时调用forget，所有节点删除这个商品的标记
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutGate {
+
+    private static final String SOLD_OUT_TOPIC = "seckill:soldout:topic";
+
+    private static final String MARK = "+";
+
+    private static final String REOPEN = "-";
+
+    private static final String FORGET = "*";
+
+    @Autowired
+    RedissonClient redissonClient;
+
+    /**
+     * 售罄的商品 -> 标记时的版本号
+     */
+    private final Map<String, Long> soldOut = new ConcurrentHashMap<>();
+
+    /**
+     * 商品 -> 收到过的最大的重新放行版本号
+     */
+    private final Map<String, Long> reopened = new ConcurrentHashMap<>();
+
+    private RTopic topic;
+
+    @PostConstruct
+    public void init() {
+        topic = redissonClient.getTopic(SOLD_OUT_TOPIC, StringCodec.INSTANCE);
+        topic.addListener(String.class, (channel, msg) -> {
+            if (msg.startsWith(FORGET)) {
+                clear(msg.substring(1));
+                return;
+            }
+            int colon = msg.lastIndexOf(':');
+            if (colon <= 1) {
+                return;
+            }
+            String randomCode = msg.substring(1, colon);
+            long generation = Long.parseLong(msg.substring(colon + 1));
+            if (msg.startsWith(MARK)) {
+                mark(randomCode, generation);
+            } else if (msg.startsWith(REOPEN)) {
+                open(randomCode, generation);
+            }
+        });
+    }
+
+    public boolean isSoldOut(String randomCode) {
+        return soldOut.containsKey(randomCode);
+    }
+
+    /**
+     * 标记售罄，generation是读到库存为0时的版本号；只有本地第一次标记时才广播，秒杀线程不等待发布结果
+     */
+    public void markSoldOut(String randomCode, long generation) {
+        if (mark(randomCode, generation)) {
+            log.info("秒杀商品已售罄: {}", randomCode);
+            topic.publishAsync(MARK + randomCode + ":" + generation);
+        }
+    }
+
+    /**
+     * 重新放行，generation是归还库存之后的版本号
+     */
+    public void reopen(String randomCode, long generation) {
+        open(randomCode, generation);
+        topic.publish(REOPEN + randomCode + ":" + generation);
+    }
+
+    /**
+     * 场次回收后删除所有节点上这些商品的标记
+     */
+    public void forget(Collection<String> randomCodes) {
+        for (String randomCode : randomCodes) {
+            clear(randomCode);
+            topic.publishAsync(FORGET + randomCode);
+        }
+    }
+
+    private synchronized boolean mark(String randomCode, long generation) {
+        if (generation < reopened.getOrDefault(randomCode, 0L) || soldOut.containsKey(randomCode)) {
+            return false;
+        }
+        soldOut.put(randomCode, generation);
+        return true;
+    }
+
+    private synchronized void open(String randomCode, long generation) {
+        reopened.merge(randomCode, generation, Math::max);
+        Long marked = soldOut.get(randomCode);
+        if (marked != null && marked < generation) {
+            soldOut.remove(randomCode);
+        }
+    }
+
+    private synchronized void clear(String randomCode) {
+        soldOut.remove(randomCode);
+        reopened.remove(randomCode);
+    }
+}
@@ -0,0 +1,237 @@
+package com.atguigu.gulimall.seckill.component;
+
+import com.atguigu.gulimall.seckill.config.SeckillTicketProperties;
+import com.atguigu.gulimall.seckill.constant.SeckillConstant;
+import com.atguigu.gulimall.seckill.to.SeckillSkuRedisTo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * 秒杀等候室
+ * 1. 每个秒杀商品在本地有一个令牌桶，容量为 redis中的剩余库存 * (1 + margin) / 秒杀节点数，
+ * 所有节点加起来放行剩余库存加上一定余量；节点中途重启时也按剩余库存建桶，不会重新放行整场的量
+ * 2. 每分钟按最新的剩余库存和节点数调整一次容量，已经多出的令牌随之收回
+ * 3. 拿到令牌的用户获得一个短期有效的签名令牌(ticket)，只有持有ticket的请求才会去redis扣库存；
+ * ticket带一个随机编号，在秒杀脚本里和扣库存一起原子地核销，每张ticket只能用一次
+ * 4. 远超库存的请求在本地直接拒绝，保护redis和rabbitmq
+ */
+@Slf4j
+@Component
+public class SeckillWaitingRoom {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    @Autowired
+    SeckillTicketProperties properties;
+
+    @Autowired
+    StringRedisTemplate redisTemplate;
+
+    @Autowired
+    DiscoveryClient discoveryClient;
+
+    @Value("${spring.application.name}")
+    String applicationName;
+
+    private volatile int nodes = 1;
+
+    private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    private SecretKeySpec secretKey;
+
+    private final ThreadLocal<Mac> macs = new ThreadLocal<>();
+
+    @PostConstruct
+    public void init() {
+        if (StringUtils.isEmpty(properties.getSecret())) {
+            throw new IllegalStateException("gulimall.seckill.ticket.secret未配置，请通过环境变量GULIMALL_SECKILL_TICKET_SECRET或配置中心提供");
+        }
+        secretKey = new SecretKeySpec(properties.getSecret().getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        refreshNodes();
+    }
+
+    /**
+     * 从商品的令牌桶里取一个令牌，取到了就签发ticket，取不到返回null
+     */
+    public String issueTicket(Long memberId, String killId, SeckillSkuRedisTo sku) {
+        TokenBucket bucket = buckets.computeIfAbsent(sku.getRandomCode(), code -> {
+            TokenBucket created = new TokenBucket(code, sku.getEndTime());
+            created.resize(capacity(remainingStock(code, sku)));
+            return created;
+        });
+        if (!bucket.tryAcquire()) {
+            return null;
+        }
+        long expireAt = System.currentTimeMillis() + properties.getTtl();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String nonce = Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+        return expireAt + "." + nonce + "." + sign(memberId, killId, expireAt, nonce);
+    }
+
+    /**
+     * 校验ticket的签名和有效期，纯内存计算；通过时返回ticket的随机编号，由秒杀脚本核销，不通过返回null
+     */
+    public String verifyTicket(String ticket, Long memberId, String killId) {
+        if (StringUtils.isEmpty(ticket)) {
+            return null;
+        }
+        String[] parts = ticket.split("\\.");
+        if (parts.length != 3 || parts[1].isEmpty()) {
+            return null;
+        }
+        long expireAt;
+        try {
+            expireAt = Long.parseLong(parts[0]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (expireAt < System.currentTimeMillis()) {
+            return null;
+        }
+        byte[] expected = sign(memberId, killId, expireAt, parts[1]).getBytes(StandardCharsets.UTF_8);
+        byte[] actual = parts[2].getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(expected, actual) ? parts[1] : null;
+    }
+
+    /**
+     * ticket有效期(毫秒)，核销标记保留同样长的时间
+     */
+    public long getTicketTtl() {
+        return properties.getTtl();
+    }
+
+    /**
+     * 清理已经结束的场次的令牌桶，按最新的节点数和剩余库存(一次multiGet)调整其余令牌桶的容量
+     */
+    public void refresh() {
+        long now = System.currentTimeMillis();
+        buckets.values().removeIf(bucket -> bucket.endTime < now);
+        refreshNodes();
+        List<TokenBucket> current = new ArrayList<>(buckets.values());
+        if (current.isEmpty()) {
+            return;
+        }
+        List<String> keys = current.stream().map(bucket -> SeckillConstant.SKU_STOCK_SEMAPHORE + bucket.randomCode)
+                .collect(Collectors.toList());
+        List<String> stocks;
+        try {
+            stocks = redisTemplate.opsForValue().multiGet(keys);
+        } catch (Exception e) {
+            log.warn("查询秒杀剩余库存失败，令牌桶容量保持不变", e);
+            return;
+        }
+        for (int i = 0; i < current.size(); i++) {
+            String stock = stocks == null ? null : stocks.get(i);
+            current.get(i).resize(capacity(stock == null ? 0 : Long.parseLong(stock)));
+        }
+    }
+
+    private void refreshNodes() {
+        try {
+            nodes = Math.max(1, discoveryClient.getInstances(applicationName).size());
+        } catch (Exception e) {
+            log.warn("查询秒杀节点数失败，继续按{}个节点分配令牌", nodes, e);
+        }
+    }
+
+    /**
+     * 本节点的令牌桶容量：剩余库存 * (1 + margin) / 节点数，还有库存时至少为1
+     */
+    private double capacity(long remaining) {
+        if (remaining <= 0) {
+            return 0;
+        }
+        return Math.ceil(remaining * (1 + properties.getMargin()) / nodes);
+    }
+
+    /**
+     * redis中的剩余库存，查询失败时按秒杀总量
+     */
+    private long remainingStock(String randomCode, SeckillSkuRedisTo sku) {
+        try {
+            String stock = redisTemplate.opsForValue().get(SeckillConstant.SKU_STOCK_SEMAPHORE + randomCode);
+            return stock == null ? 0 : Long.parseLong(stock);
+        } catch (Exception e) {
+            log.warn("查询秒杀剩余库存失败，按秒杀总量建立令牌桶：{}", randomCode, e);
+            return sku.getSeckillCount();
+        }
+    }
+
+    private String sign(Long memberId, String killId, long expireAt, String nonce) {
+        Mac mac = macs.get();
+        if (mac == null) {
+            try {
+                mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(secretKey);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+            macs.set(mac);
+        }
+        byte[] data = (memberId + ":" + killId + ":" + expireAt + ":" + nonce).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal(data));
+    }
+
+    private class TokenBucket {
+
+        private final String randomCode;
+
+        private final long endTime;
+
+        private double capacity;
+
+        private double refillPerMillis;
+
+        private double tokens;
+
+        private long lastRefill;
+
+        private boolean filled;
+
+        TokenBucket(String randomCode, long endTime) {
+            this.randomCode = randomCode;
+            this.endTime = endTime;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        /**
+         * 调整容量，新建时装满；容量变小时多出的令牌直接丢弃
+         */
+        synchronized void resize(double newCapacity) {
+            capacity = newCapacity;
+            refillPerMillis = newCapacity * properties.getRefillRatio() / 1000;
+            tokens = filled ? Math.min(tokens, newCapacity) : newCapacity;
+            filled = true;
+        }
+
+        synchronized boolean tryAcquire() {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerMillis);
+            lastRefill = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+}
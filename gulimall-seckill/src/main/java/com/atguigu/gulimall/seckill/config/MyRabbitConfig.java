@@ -1,5 +1,9 @@
 package com.atguigu.gulimall.seckill.config;
 
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
@@ -26,4 +30,29 @@ public class MyRabbitConfig {
     public MessageConverter messageConverter() {
         return new Jackson2JsonMessageConverter();
     }
+
+    /**
+     * 和订单服务声明的交换机一致，先于订单服务启动时也能绑定
+     */
+    @Bean
+    public Exchange orderEventExchange() {
+        return new TopicExchange("order-event-exchange", true, false);
+    }
+
+    /**
+     * 订单服务关闭秒杀订单后发到order-event-exchange的库存归还消息
+     */
+    @Bean
+    public Queue seckillReleaseStockQueue() {
+        return new Queue("seckill.release.stock.queue", true, false, false);
+    }
+
+    @Bean
+    public Binding seckillReleaseStockBinding() {
+        return new Binding("seckill.release.stock.queue",
+                Binding.DestinationType.QUEUE,
+                "order-event-exchange",
+                "order.release.seckill",
+                null);
+    }
 }
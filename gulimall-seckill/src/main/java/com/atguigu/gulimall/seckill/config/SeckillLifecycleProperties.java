@@ -0,0 +1,27 @@
+package com.atguigu.gulimall.seckill.config;
+
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties(prefix = "gulimall.seckill.lifecycle")
+@Component
+@Data
+public class SeckillLifecycleProperties {
+
+    /**
+     * 场次结束后秒杀数据继续保留的时间(毫秒)，之后过期并回收
+     */
+    private Long grace = 600000L;
+
+    /**
+     * 场次开始前多久预热本地缓存(毫秒)
+     */
+    private Long prewarm = 300000L;
+
+    /**
+     * 回收时每批扫描/删除的hash field数量
+     */
+    private Integer batchSize = 500;
+}
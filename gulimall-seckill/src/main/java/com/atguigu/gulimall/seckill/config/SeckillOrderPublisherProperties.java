@@ -0,0 +1,42 @@
+package com.atguigu.gulimall.seckill.config;
+
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties(prefix = "gulimall.seckill.order-publisher")
+@Component
+@Data
+public class SeckillOrderPublisherProperties {
+
+    /**
+     * 等待写日志和等待发送的订单队列大小；等待发送的队列满了以后由日志整段重放
+     */
+    private Integer capacity = 65536;
+
+    /**
+     * 每批发送的最大消息数
+     */
+    private Integer batchSize = 200;
+
+    /**
+     * 等待broker确认一批消息的超时时间(毫秒)
+     */
+    private Long confirmTimeout = 5000L;
+
+    /**
+     * 等待订单写入本地日志的超时时间(毫秒)，超时后秒杀失败并归还库存
+     */
+    private Long walTimeout = 3000L;
+
+    /**
+     * 每个日志段最多保存的订单数，写满后滚动到新的段
+     */
+    private Integer segmentSize = 10000;
+
+    /**
+     * 本地日志所在目录，必须配置，需要放在重启后仍然保留的磁盘上(不能是/tmp之类的临时目录)
+     */
+    private String walDir;
+}
@@ -0,0 +1,32 @@
+package com.atguigu.gulimall.seckill.config;
+
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties(prefix = "gulimall.seckill.ticket")
+@Component
+@Data
+public class SeckillTicketProperties {
+
+    /**
+     * 令牌签名密钥，所有秒杀节点必须一致
+     */
+    private String secret;
+
+    /**
+     * 令牌有效期(毫秒)
+     */
+    private Long ttl = 10000L;
+
+    /**
+     * 每个节点上每个商品的令牌桶容量 = 剩余库存 * (1 + margin) / 秒杀节点数
+     */
+    private Double margin = 0.2;
+
+    /**
+     * 每秒补充的令牌数占桶容量的比例，补上领了令牌却没有下单的名额
+     */
+    private Double refillRatio = 0.1;
+}
@@ -2,6 +2,7 @@ package com.atguigu.gulimall.seckill.config;
 
 import com.atguigu.gulimall.seckill.interceptor.LoginUserInterceptor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -9,6 +10,7 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
  * @author: maruimin
  * @date: 2020/6/21 13:45
  */
+@Configuration
 public class SeckillWebConfig implements WebMvcConfigurer {
 
     @Autowired
@@ -0,0 +1,20 @@
+package com.atguigu.gulimall.seckill.constant;
+
+public class SeckillConstant {
+
+    public static final String SESSIONS_CACHE_PREFIX = "seckill:sessions:";
+
+    public static final String SESSIONS_TIMELINE = "seckill:timeline:sessions";
+
+    public static final String SKUKILL_CACHE_PREFIX = "seckill:skus:";
+
+    public static final String SKU_SESSIONS_INDEX_PREFIX = "seckill:index:sku:"; // 后面再加一个skuId，zset: sessionId_skuId -> 结束时间
+
+    public static final String SKU_STOCK_SEMAPHORE = "seckill:stock:"; // 后面再加一个商品随机码
+
+    public static final String SKU_STOCK_GENERATION = "seckill:soldout:generation:"; // 后面再加一个商品随机码，每次归还库存加一，和库存一起过期
+
+    public static final String ORDER_RELEASED_PREFIX = "seckill:released:"; // 后面再加一个订单号，已经归还过库存的取消订单
+
+    public static final String TICKET_USED_PREFIX = "seckill:ticket:"; // 后面再加一个ticket编号，核销过的ticket，过期时间和ticket有效期一致
+}
@@ -1,6 +1,7 @@
 package com.atguigu.gulimall.seckill.controller;
 
 
+import com.atguigu.common.exception.BizCodeEnume;
 import com.atguigu.common.utils.R;
 import com.atguigu.gulimall.seckill.service.SeckillService;
 import com.atguigu.gulimall.seckill.to.SeckillSkuRedisTo;
@@ -37,6 +38,19 @@ public class SeckillController {
         return R.ok().setData(to);
     }
 
+    /**
+     * 领取秒杀资格ticket，只有持有ticket才能秒杀
+     */
+    @GetMapping("/kill/ticket")
+    @ResponseBody
+    public R getKillTicket(@RequestParam("killid") String killId) {
+        String ticket = seckillService.getKillTicket(killId);
+        if (ticket == null) {
+            return R.error(BizCodeEnume.TOO_MANY_REQUEST.getCode(), BizCodeEnume.TOO_MANY_REQUEST.getMsg());
+        }
+        return R.ok().setData(ticket);
+    }
+
     /**
      * 秒杀商品
      * todo 上架秒杀商品的时候，每一个数据都有过期时间
@@ -46,9 +60,10 @@ public class SeckillController {
     public String secKill(@RequestParam("killid") String killId,
                           @RequestParam("key") String key,
                           @RequestParam("num") Integer num,
+                          @RequestParam("ticket") String ticket,
                           Model model) {
 
-        String orderSn = seckillService.kill(killId, key, num);
+        String orderSn = seckillService.kill(killId, key, num, ticket);
         model.addAttribute("orderSn", orderSn);
         return "success";
     }
@@ -4,11 +4,18 @@ package com.atguigu.gulimall.seckill.feign;
 import com.atguigu.common.utils.R;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 
+import java.util.List;
+
 @FeignClient("gulimall-product")
 public interface ProductFeignService {
 
     @RequestMapping("/product/skuinfo/info/{skuId}")
     R getSkuInfo(@PathVariable("skuId") Long skuId);
+
+    @PostMapping("/product/skuinfo/infos")
+    R getSkuInfos(@RequestBody List<Long> skuIds);
 }
@@ -25,7 +25,7 @@ public class LoginUserInterceptor implements HandlerInterceptor {
         // 对/order/order/status/下的所有请求直接放行，无需登录
         String uri = request.getRequestURI();
         AntPathMatcher antPathMatcher = new AntPathMatcher();
-        boolean match = antPathMatcher.match("/kill", uri);
+        boolean match = antPathMatcher.match("/kill", uri) || antPathMatcher.match("/kill/ticket", uri);
         if (match) {
             MemberRespVo attribute = (MemberRespVo) request.getSession().getAttribute(AuthServerConstant.LOGIN_USER);
             if (attribute != null) {
@@ -0,0 +1,37 @@
+package com.atguigu.gulimall.seckill.listener;
+
+import com.atguigu.common.to.mq.SeckillOrderReleaseTo;
+import com.atguigu.gulimall.seckill.service.SeckillService;
+import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitHandler;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+
+/**
+ * 秒杀订单超时关闭后归还秒杀库存，重新打开售罄标记
+ */
+@Slf4j
+@Service
+@RabbitListener(queues = "seckill.release.stock.queue")
+public class SeckillReleaseListener {
+
+    @Autowired
+    SeckillService seckillService;
+
+    @RabbitHandler
+    public void handleSeckillOrderRelease(SeckillOrderReleaseTo to, Channel channel, Message message) throws IOException {
+        try {
+            seckillService.releaseOrders(to.getOrders());
+            channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
+        } catch (Exception e) {
+            // 按订单号去重，重新投递不会重复归还
+            log.error("归还秒杀库存失败，消息重新入队", e);
+            channel.basicReject(message.getMessageProperties().getDeliveryTag(), true);
+        }
+    }
+}
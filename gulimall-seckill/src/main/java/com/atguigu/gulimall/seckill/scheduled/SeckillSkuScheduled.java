@@ -1,6 +1,9 @@
 package com.atguigu.gulimall.seckill.scheduled;
 
 
+import com.atguigu.gulimall.seckill.component.SeckillLifecycle;
+import com.atguigu.gulimall.seckill.component.SeckillSessionTimeline;
+import com.atguigu.gulimall.seckill.component.SeckillWaitingRoom;
 import com.atguigu.gulimall.seckill.service.SeckillService;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
@@ -29,8 +32,19 @@ public class SeckillSkuScheduled {
     @Autowired
     RedissonClient redissonClient;
 
+    @Autowired
+    SeckillSessionTimeline sessionTimeline;
+
+    @Autowired
+    SeckillWaitingRoom waitingRoom;
+
+    @Autowired
+    SeckillLifecycle lifecycle;
+
     private final String upload_lock = "seckill:upload:lock";
 
+    private final String reclaim_lock = "seckill:reclaim:lock";
+
     @Scheduled(cron = "0 0 3 * * ?")
     public void uploadSeckillSkuLatest3Days() {
         // 1. 重复上架无需处理
@@ -44,5 +58,31 @@ public class SeckillSkuScheduled {
         }
 
     }
+
+    /**
+     * 上架只在拿到锁的节点上执行，其他节点定时从redis刷新本地的场次时间线；启动时立即刷新一次
+     */
+    @Scheduled(initialDelay = 0, fixedDelay = 60000)
+    public void refreshSessionTimeline() {
+        sessionTimeline.refresh();
+        waitingRoom.refresh();
+        lifecycle.prewarm();
+    }
+
+    /**
+     * 每10分钟回收已经结束的场次数据，只需要一个节点执行，拿不到锁直接跳过
+     */
+    @Scheduled(initialDelay = 60000, fixedDelay = 600000)
+    public void reclaimExpired() throws InterruptedException {
+        RLock lock = redissonClient.getLock(reclaim_lock);
+        if (!lock.tryLock(0, 300, TimeUnit.SECONDS)) {
+            return;
+        }
+        try {
+            lifecycle.reclaimExpired();
+        } finally {
+            lock.unlock();
+        }
+    }
 }
 
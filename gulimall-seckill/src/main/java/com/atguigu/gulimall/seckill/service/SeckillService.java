@@ -1,5 +1,6 @@
 package com.atguigu.gulimall.seckill.service;
 
+import com.atguigu.common.to.mq.SeckillOrderTo;
 import com.atguigu.gulimall.seckill.to.SeckillSkuRedisTo;
 
 import java.util.List;
@@ -11,5 +12,20 @@ public interface SeckillService {
 
     SeckillSkuRedisTo getSkuSeckillInfo(Long skuId);
 
-    String kill(String killId, String key, Integer num);
+    /**
+     * 从本地令牌桶领取秒杀资格，返回签名的ticket，没有领到返回null
+     */
+    String getKillTicket(String killId);
+
+    String kill(String killId, String key, Integer num, String ticket);
+
+    /**
+     * 补库存或秒杀订单没有保存下来时归还库存，并重新打开所有节点的售罄标记
+     */
+    void releaseStock(String randomCode, Integer num);
+
+    /**
+     * 秒杀订单取消后归还库存，同一个订单只归还一次；场次已经回收的忽略
+     */
+    void releaseOrders(List<SeckillOrderTo> orders);
 }
@@ -6,31 +6,41 @@ import com.alibaba.csp.sentinel.annotation.SentinelResource;
 import com.alibaba.csp.sentinel.slots.block.BlockException;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.TypeReference;
+import com.atguigu.common.id.SnowflakeIdGenerator;
 import com.atguigu.common.to.mq.SeckillOrderTo;
 import com.atguigu.common.utils.R;
 import com.atguigu.common.vo.MemberRespVo;
+import com.atguigu.gulimall.seckill.component.SeckillOrderPublisher;
+import com.atguigu.gulimall.seckill.component.SeckillSessionTimeline;
+import com.atguigu.gulimall.seckill.component.SeckillSkuIndex;
+import com.atguigu.gulimall.seckill.component.SeckillSoldOutGate;
+import com.atguigu.gulimall.seckill.component.SeckillWaitingRoom;
+import com.atguigu.gulimall.seckill.config.SeckillLifecycleProperties;
+import com.atguigu.gulimall.seckill.constant.SeckillConstant;
 import com.atguigu.gulimall.seckill.feign.CouponFeignService;
 import com.atguigu.gulimall.seckill.feign.ProductFeignService;
 import com.atguigu.gulimall.seckill.interceptor.LoginUserInterceptor;
 import com.atguigu.gulimall.seckill.service.SeckillService;
 import com.atguigu.gulimall.seckill.to.SeckillSkuRedisTo;
 import com.atguigu.gulimall.seckill.vo.SeckillSessionsWithSkus;
+import com.atguigu.gulimall.seckill.vo.SeckillSkuVo;
 import com.atguigu.gulimall.seckill.vo.SkuInfoVo;
-import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RSemaphore;
 import org.redisson.api.RedissonClient;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.core.BoundHashOperations;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.util.*;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -50,13 +60,48 @@ public class SeckillServiceImpl implements SeckillService {
     RedissonClient redissonClient;
 
     @Autowired
-    RabbitTemplate rabbitTemplate;
+    SeckillSoldOutGate soldOutGate;
 
-    private final String SESSIONS_CACHE_PREFIX = "seckill:sessions:";
+    @Autowired
+    SeckillSessionTimeline sessionTimeline;
+
+    @Autowired
+    SeckillSkuIndex skuIndex;
+
+    @Autowired
+    SeckillOrderPublisher orderPublisher;
+
+    @Autowired
+    SeckillWaitingRoom waitingRoom;
+
+    @Autowired
+    SeckillLifecycleProperties lifecycleProperties;
+
+    @Autowired
+    SnowflakeIdGenerator idGenerator;
+
+    private static final int UPLOAD_BATCH_SIZE = 500;
+
+    private static final long KILL_SUCCESS = 1L;
+
+    private static final long KILL_SOLD_OUT = -5L;
+
+    /**
+     * 秒杀准入脚本，见 resources/lua/seckill_kill.lua
+     */
+    private static final DefaultRedisScript<List> SECKILL_KILL_SCRIPT = new DefaultRedisScript<>();
 
-    private final String SKUKILL_CACHE_PREFIX = "seckill:skus:";
+    /**
+     * 归还库存脚本，见 resources/lua/seckill_release.lua
+     */
+    private static final DefaultRedisScript<Long> SECKILL_RELEASE_SCRIPT = new DefaultRedisScript<>();
 
-    private final String SKU_STOCK_SEMAPHORE = "seckill:stock:"; // 后面再加一个商品随机码
+    static {
+        SECKILL_KILL_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/seckill_kill.lua")));
+        SECKILL_KILL_SCRIPT.setResultType(List.class);
+        SECKILL_RELEASE_SCRIPT.setScriptSource(new ResourceScriptSource(new ClassPathResource("lua/seckill_release.lua")));
+        SECKILL_RELEASE_SCRIPT.setResultType(Long.class);
+    }
 
     @Override
     public void uploadSeckillSkuLatest3Days() {
@@ -71,6 +116,9 @@ public class SeckillServiceImpl implements SeckillService {
             saveSessionInfos(sessionData);
             //2. 缓存活动的关联商品信息
             saveSessionSkuInfos(sessionData);
+            //3. 重建本地的场次时间线，清空sku索引的本地缓存
+            sessionTimeline.refresh();
+            skuIndex.clear();
         }
     }
 
@@ -87,26 +135,10 @@ public class SeckillServiceImpl implements SeckillService {
         // 1970 -
         long time = new Date().getTime();
         try (Entry entry = SphU.entry("seckillSkus")) {
-            Set<String> keys = redisTemplate.keys(SESSIONS_CACHE_PREFIX + "*");
-            assert keys != null;
-            for (String key : keys) {
-                // seckill:sessions:1571280398129_15823984723957
-                String replace = key.replace(SESSIONS_CACHE_PREFIX, "");
-                String[] s = replace.split("_");
-                long start = Long.parseLong(s[0]);
-                long end = Long.parseLong(s[1]);
-                if (time >= start && time <= end) {
-                    // 2. 获取这个秒杀场次需要的所有商品信息
-                    List<String> range = redisTemplate.opsForList().range(key, -100, 100);
-                    BoundHashOperations<String, String, Object> hashOps = redisTemplate.boundHashOps(SKUKILL_CACHE_PREFIX);
-                    List<Object> list = hashOps.multiGet(range);
-                    if (list != null) {
-                        return list.stream().map(item -> {
-                            return JSON.parseObject((String) item, SeckillSkuRedisTo.class);
-                        }).collect(Collectors.toList());
-                    }
-                    break;
-                }
+            // 2. 从本地场次时间线快照里二分查找，不访问redis
+            SeckillSessionTimeline.SessionSnapshot session = sessionTimeline.current(time);
+            if (session != null) {
+                return session.getSkus();
             }
         } catch (BlockException e) {
 
@@ -116,136 +148,238 @@ public class SeckillServiceImpl implements SeckillService {
 
     @Override
     public SeckillSkuRedisTo getSkuSeckillInfo(Long skuId) {
-        //1 .找到所有需要参与秒杀的商品的key
-        BoundHashOperations<String, String, String> hashOps = redisTemplate.boundHashOps(SKUKILL_CACHE_PREFIX);
-
-        Set<String> keys = hashOps.keys();
-        if (keys != null && keys.size() > 0) {
-            String regx = "\\d_" + skuId;
-            for (String key : keys) {
-                if (Pattern.matches(regx, key)) {
-                    String json = hashOps.get(key);
-                    SeckillSkuRedisTo skuRedisTo = JSON.parseObject(json, SeckillSkuRedisTo.class);
-
-                    // 随机码
-                    long current = new Date().getTime();
-                    if (current > skuRedisTo.getStartTime() && current <= skuRedisTo.getEndTime()) {
-                    } else {
-                        skuRedisTo.setRandomCode(null);
-                    }
-                    return skuRedisTo;
-                }
-            }
+        //1 .通过skuId索引直接找到当前或者下一场的秒杀信息
+        SeckillSkuRedisTo skuRedisTo = skuIndex.get(skuId);
+        if (skuRedisTo == null) {
+            return null;
         }
-        return null;
+
+        // 随机码
+        long current = new Date().getTime();
+        if (current > skuRedisTo.getStartTime() && current <= skuRedisTo.getEndTime()) {
+            return skuRedisTo;
+        }
+        // 本地缓存的对象是共享的，不能直接修改
+        SeckillSkuRedisTo to = new SeckillSkuRedisTo();
+        BeanUtils.copyProperties(skuRedisTo, to);
+        to.setRandomCode(null);
+        return to;
     }
 
     @Override
-    public String kill(String killId, String key, Integer num) {
+    public String getKillTicket(String killId) {
+        MemberRespVo respVo = LoginUserInterceptor.loginUser.get();
+
+        // killId: sessionId_skuId
+        String[] s = killId.split("_");
+        if (s.length != 2) {
+            return null;
+        }
+        SeckillSkuRedisTo sku;
+        try {
+            sku = skuIndex.get(Long.parseLong(s[1]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (sku == null || !killId.equals(sku.getPromotionSessionId() + "_" + sku.getSkuId())) {
+            return null;
+        }
+        long time = System.currentTimeMillis();
+        if (time < sku.getStartTime() || time > sku.getEndTime() || soldOutGate.isSoldOut(sku.getRandomCode())) {
+            return null;
+        }
+        return waitingRoom.issueTicket(respVo.getId(), killId, sku);
+    }
+
+    @Override
+    public String kill(String killId, String key, Integer num, String ticket) {
 
         MemberRespVo respVo = LoginUserInterceptor.loginUser.get();
 
-        // 1. 获取当前秒杀商品的详细信息
-        BoundHashOperations<String, String, String> hashOps = redisTemplate.boundHashOps(SKUKILL_CACHE_PREFIX);
+        // 0. 没有有效ticket的请求和本地已经标记售罄的商品直接拒绝，不访问redis
+        String ticketId = waitingRoom.verifyTicket(ticket, respVo.getId(), killId);
+        if (ticketId == null) {
+            return null;
+        }
+        if (StringUtils.isEmpty(key) || soldOutGate.isSoldOut(key)) {
+            return null;
+        }
 
-        String json = hashOps.get(killId);
-        if (StringUtils.isEmpty(json)) {
+        // 1. 核销ticket，时间、随机码、数量校验，用户占位(userId_sessionId_skuId)和扣减库存在一个lua脚本里原子完成，只需要一次redis往返
+        // 占位只在扣减库存成功之后才写入，所以库存不足时不需要回滚占位
+        String redisKey = respVo.getId() + "_" + killId;
+        List<Object> result = redisTemplate.execute(SECKILL_KILL_SCRIPT,
+                Arrays.asList(SeckillConstant.SKUKILL_CACHE_PREFIX, redisKey, SeckillConstant.SKU_STOCK_SEMAPHORE + key,
+                        SeckillConstant.TICKET_USED_PREFIX + ticketId, SeckillConstant.SKU_STOCK_GENERATION + key),
+                killId, key, String.valueOf(num), String.valueOf(System.currentTimeMillis()), String.valueOf(waitingRoom.getTicketTtl()));
+        if (result == null || result.isEmpty()) {
             return null;
-        } else {
-            SeckillSkuRedisTo redis = JSON.parseObject(json, SeckillSkuRedisTo.class);
-            // 校验合法性
-            Long startTime = redis.getStartTime();
-            Long endTime = redis.getEndTime();
-            long time = new Date().getTime();
-            long ttl = endTime - time;
-
-            // 1. 校验时间的合法性
-            if (time >= startTime && time <= endTime) {
-                // 2. 校验随机码和商品Id
-                String randomCode = redis.getRandomCode();
-                String skuId = redis.getPromotionId() + "_" + redis.getSkuId();
-                if (randomCode.equals(key) && killId.equals(skuId)) {
-                    // 3. 验证购物数量是否合理
-                    if (num <= redis.getSeckillLimit()) {
-                        // 4. 验证这个人是否已经购买过。幂等性，如果只要秒杀成功，就去站位 userId_sessionId_skuId
-                        // setnx
-                        String redisKey = respVo.getId() + "_" + skuId;
-                        Boolean aBoolean = redisTemplate.opsForValue().setIfAbsent(redisKey, num.toString(), ttl, TimeUnit.MILLISECONDS);
-                        if (aBoolean) {
-                            // 占位成功，说明该用户从来没有买过
-                            RSemaphore semaphore = redissonClient.getSemaphore(SKU_STOCK_SEMAPHORE + randomCode);
-                            boolean b = semaphore.tryAcquire(num);
-                            if (b) {
-                                // 秒杀成功
-                                // 快速下单，发送MQ消息，10ms
-                                String timeId = IdWorker.getTimeId();
-                                SeckillOrderTo orderTo = new SeckillOrderTo();
-                                orderTo.setOrderSn(timeId);
-                                orderTo.setMemberId(respVo.getId());
-                                orderTo.setNum(num);
-                                orderTo.setPromotionSessionId(redis.getPromotionSessionId());
-                                orderTo.setSkuId(redis.getSkuId());
-                                orderTo.setSeckillPrice(redis.getSeckillPrice());
-                                rabbitTemplate.convertAndSend("order-event-exchange", "order.seckill.order", orderTo);
-                                return timeId;
-                            }
-                        }
-                    }
-                }
+        }
+        long code = (Long) result.get(0);
+        if (code == KILL_SOLD_OUT) {
+            // 库存已经扣光了才标记售罄，剩余库存不够本次购买数量的不算
+            if ((Long) result.get(1) <= 0) {
+                soldOutGate.markSoldOut(key, (Long) result.get(2));
             }
+            return null;
+        }
+        if (code != KILL_SUCCESS) {
+            return null;
+        }
+        if ((Long) result.get(2) <= 0) {
+            soldOutGate.markSoldOut(key, (Long) result.get(3));
+        }
+
+        // 2. 秒杀成功，快速下单，订单写入本地日志后由发送线程批量发送MQ消息
+        SeckillSkuRedisTo redis = JSON.parseObject((String) result.get(1), SeckillSkuRedisTo.class);
+        String timeId = idGenerator.nextIdString();
+        SeckillOrderTo orderTo = new SeckillOrderTo();
+        orderTo.setOrderSn(timeId);
+        orderTo.setMemberId(respVo.getId());
+        orderTo.setNum(num);
+        orderTo.setPromotionSessionId(redis.getPromotionSessionId());
+        orderTo.setSkuId(redis.getSkuId());
+        orderTo.setSeckillPrice(redis.getSeckillPrice());
+        try {
+            orderPublisher.publish(orderTo);
+        } catch (IllegalStateException e) {
+            // 订单没有保存下来，归还库存并删除占位，用户可以重新秒杀
+            log.error("秒杀订单{}保存失败，归还库存", timeId, e);
+            releaseStock(key, num);
+            redisTemplate.delete(redisKey);
+            return null;
+        }
+        return timeId;
+    }
+
+
+    @Override
+    public void releaseStock(String randomCode, Integer num) {
+        // 归还库存信号量并把版本号加一，然后通知所有节点重新放行
+        Long generation = redisTemplate.execute(SECKILL_RELEASE_SCRIPT,
+                Arrays.asList(SeckillConstant.SKU_STOCK_SEMAPHORE + randomCode, SeckillConstant.SKU_STOCK_GENERATION + randomCode),
+                String.valueOf(num));
+        if (generation != null && generation >= 0) {
+            soldOutGate.reopen(randomCode, generation);
         }
-        return null;
     }
 
+    @Override
+    public void releaseOrders(List<SeckillOrderTo> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        // 1. 一次hmget查出订单对应的秒杀商品，拿到库存信号量的随机码
+        List<String> killIds = orders.stream().map(order -> order.getPromotionSessionId() + "_" + order.getSkuId())
+                .collect(Collectors.toList());
+        List<String> skus = redisTemplate.<String, String>opsForHash().multiGet(SeckillConstant.SKUKILL_CACHE_PREFIX, killIds);
+        for (int i = 0; i < orders.size(); i++) {
+            SeckillOrderTo order = orders.get(i);
+            String json = skus == null ? null : skus.get(i);
+            if (json == null) {
+                log.info("秒杀订单{}对应的场次已经回收，不再归还库存", order.getOrderSn());
+                continue;
+            }
+            String randomCode = JSON.parseObject(json, SeckillSkuRedisTo.class).getRandomCode();
+            // 2. 用订单号去重，消息重复投递时不会多归还；用户的限购占位保留，同一场次不能再次秒杀
+            Long generation = redisTemplate.execute(SECKILL_RELEASE_SCRIPT,
+                    Arrays.asList(SeckillConstant.SKU_STOCK_SEMAPHORE + randomCode, SeckillConstant.SKU_STOCK_GENERATION + randomCode,
+                            SeckillConstant.ORDER_RELEASED_PREFIX + order.getOrderSn()),
+                    String.valueOf(order.getNum()));
+            if (generation != null && generation >= 0) {
+                log.info("秒杀订单{}已取消，归还库存{}件", order.getOrderSn(), order.getNum());
+                soldOutGate.reopen(randomCode, generation);
+            }
+        }
+    }
 
     private void saveSessionInfos(List<SeckillSessionsWithSkus> sessions) {
         sessions.forEach(session -> {
             long startTime = session.getStartTime().getTime();
             long endTime = session.getEndTime().getTime();
-            String key = SESSIONS_CACHE_PREFIX + startTime + "_" + endTime;
+            String key = SeckillConstant.SESSIONS_CACHE_PREFIX + startTime + "_" + endTime;
+            // 登记到场次时间线，重复登记没有影响
+            sessionTimeline.addSession(startTime, endTime);
             Boolean hasKey = redisTemplate.hasKey(key);
             if (!hasKey) {
-                List<String> collect = session.getRelationSkus().stream().map(item -> item.getPromotionId() + "_" + item.getSkuId().toString()).collect(Collectors.toList());
-                // 缓存活动进redis
+                List<String> collect = session.getRelationSkus().stream().map(item -> item.getPromotionSessionId() + "_" + item.getSkuId().toString()).collect(Collectors.toList());
+                // 缓存活动进redis，场次结束 + grace 后过期
                 redisTemplate.opsForList().leftPushAll(key, collect);
+                redisTemplate.expireAt(key, new Date(endTime + lifecycleProperties.getGrace()));
             }
         });
     }
 
     private void saveSessionSkuInfos(List<SeckillSessionsWithSkus> sessions) {
-        sessions.stream().forEach(session -> {
-            // 准备hash操作
-            BoundHashOperations<String, Object, Object> ops = redisTemplate.boundHashOps(SKUKILL_CACHE_PREFIX);
-            String token = UUID.randomUUID().toString().replace("-", "");
-            session.getRelationSkus().stream().forEach(seckillSkuVo -> {
-                if (!ops.hasKey(seckillSkuVo.getPromotionSessionId() + "_" + seckillSkuVo.getSkuId().toString())) {
-                    // 缓存商品
-                    SeckillSkuRedisTo redisTo = new SeckillSkuRedisTo();
-                    // 1. sku的基本数据
-                    R skuInfo = productFeignService.getSkuInfo(seckillSkuVo.getSkuId());
-                    if (skuInfo.getCode() == 0) {
-                        SkuInfoVo info = skuInfo.getData("skuInfo", new TypeReference<SkuInfoVo>() {
-                        });
-                        redisTo.setSkuInfo(info);
-                    }
-                    // 2. sku的秒杀信息
-                    BeanUtils.copyProperties(seckillSkuVo, redisTo);
-
-                    // 3. 设置上当前商品的秒杀时间信息
-                    redisTo.setStartTime(session.getStartTime().getTime());
-                    redisTo.setEndTime(session.getEndTime().getTime());
-
-                    // 4. 给秒杀商品设置随机码
-                    redisTo.setRandomCode(token);
-                    String jsonString = JSON.toJSONString(redisTo);
-                    ops.put(seckillSkuVo.getPromotionSessionId().toString() + "_" + seckillSkuVo.getSkuId().toString(), jsonString);
-                    // 5. 使用库存作为分布式的信号量，限流
-                    RSemaphore semaphore = redissonClient.getSemaphore(SKU_STOCK_SEMAPHORE + token);
-                    // 商品可以秒杀的数量作为信号量
-                    semaphore.trySetPermits(seckillSkuVo.getSeckillCount());
+        // 1. 一次批量远程调用查出所有sku的基本数据
+        List<Long> skuIds = sessions.stream().flatMap(session -> session.getRelationSkus().stream())
+                .map(SeckillSkuVo::getSkuId).distinct().collect(Collectors.toList());
+        Map<Long, SkuInfoVo> skuInfos = getSkuInfos(skuIds);
+
+        List<SeckillSkuRedisTo> redisTos = new ArrayList<>();
+        sessions.forEach(session -> session.getRelationSkus().forEach(seckillSkuVo -> {
+            // 缓存商品
+            SeckillSkuRedisTo redisTo = new SeckillSkuRedisTo();
+            // 2. sku的基本数据
+            redisTo.setSkuInfo(skuInfos.get(seckillSkuVo.getSkuId()));
+            // 3. sku的秒杀信息
+            BeanUtils.copyProperties(seckillSkuVo, redisTo);
+            // 4. 设置上当前商品的秒杀时间信息
+            redisTo.setStartTime(session.getStartTime().getTime());
+            redisTo.setEndTime(session.getEndTime().getTime());
+            // 5. 给秒杀商品设置随机码，每个商品一个，库存信号量也是按随机码区分的
+            redisTo.setRandomCode(UUID.randomUUID().toString().replace("-", ""));
+            redisTos.add(redisTo);
+        }));
+
+        // sku索引在sku参与的最后一个场次结束 + grace 后过期
+        Map<Long, Long> indexExpireAt = redisTos.stream()
+                .collect(Collectors.toMap(SeckillSkuRedisTo::getSkuId, SeckillSkuRedisTo::getEndTime, Math::max));
 
+        long grace = lifecycleProperties.getGrace();
+        // 6. 分批写入redis，每批先用一次hmget过滤掉已经上架的，再用一次pipeline写入
+        BoundHashOperations<String, String, String> hashOps = redisTemplate.boundHashOps(SeckillConstant.SKUKILL_CACHE_PREFIX);
+        for (int i = 0; i < redisTos.size(); i += UPLOAD_BATCH_SIZE) {
+            List<SeckillSkuRedisTo> batch = redisTos.subList(i, Math.min(i + UPLOAD_BATCH_SIZE, redisTos.size()));
+            List<String> skuKeys = batch.stream().map(item -> item.getPromotionSessionId() + "_" + item.getSkuId()).collect(Collectors.toList());
+            List<String> exists = hashOps.multiGet(skuKeys);
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for (int j = 0; j < batch.size(); j++) {
+                        SeckillSkuRedisTo redisTo = batch.get(j);
+                        String skuKey = skuKeys.get(j);
+                        // 登记skuId -> 场次的索引，重复登记没有影响
+                        String indexKey = SeckillConstant.SKU_SESSIONS_INDEX_PREFIX + redisTo.getSkuId();
+                        operations.opsForZSet().add(indexKey, skuKey, redisTo.getEndTime());
+                        operations.expireAt(indexKey, new Date(indexExpireAt.get(redisTo.getSkuId()) + grace));
+                        if (exists == null || exists.get(j) == null) {
+                            operations.opsForHash().put(SeckillConstant.SKUKILL_CACHE_PREFIX, skuKey, JSON.toJSONString(redisTo));
+                            // 使用库存作为分布式的信号量，和RSemaphore.trySetPermits一样只在不存在时设置，在场次结束 + grace 后过期
+                            String stockKey = SeckillConstant.SKU_STOCK_SEMAPHORE + redisTo.getRandomCode();
+                            operations.opsForValue().setIfAbsent(stockKey, String.valueOf(redisTo.getSeckillCount()));
+                            operations.expireAt(stockKey, new Date(redisTo.getEndTime() + grace));
+                        }
+                    }
+                    return null;
                 }
             });
-        });
+        }
+    }
+
+    private Map<Long, SkuInfoVo> getSkuInfos(List<Long> skuIds) {
+        Map<Long, SkuInfoVo> skuInfos = new HashMap<>();
+        for (int i = 0; i < skuIds.size(); i += UPLOAD_BATCH_SIZE) {
+            R r = productFeignService.getSkuInfos(skuIds.subList(i, Math.min(i + UPLOAD_BATCH_SIZE, skuIds.size())));
+            if (r.getCode() == 0) {
+                List<SkuInfoVo> infos = r.getData(new TypeReference<List<SkuInfoVo>>() {
+                });
+                if (infos != null) {
+                    infos.forEach(info -> skuInfos.put(info.getSkuId(), info));
+                }
+            }
+        }
+        return skuInfos;
     }
 }
@@ -0,0 +1,41 @@
+-- 秒杀准入脚本：核销ticket，校验时间、随机码、限购数量，用户去重并扣减库存，一次往返原子完成
+-- KEYS[1] 秒杀商品hash(seckill:skus:)  KEYS[2] 用户占位key(userId_sessionId_skuId)  KEYS[3] 库存信号量(seckill:stock:随机码)
+-- KEYS[4] ticket核销标记(seckill:ticket:编号)  KEYS[5] 库存归还版本号(seckill:soldout:generation:随机码)
+-- ARGV[1] killId(sessionId_skuId)  ARGV[2] 随机码  ARGV[3] 购买数量  ARGV[4] 当前时间(毫秒)  ARGV[5] ticket有效期(毫秒)
+-- 返回 {1, 商品json, 剩余库存, 版本号} 成功; {0} 商品不存在; {-1} 不在秒杀时间内; {-2} 随机码不匹配; {-3} 数量不合法; {-4} 已经买过;
+-- {-5, 剩余库存, 版本号} 库存不足; {-6} ticket已经用过
+-- 版本号和库存在同一次原子操作里读出，调用方标记售罄时带上，晚于归还库存的标记会被忽略
+-- 每张ticket只能进入脚本一次，不论这次秒杀是否成功
+if not redis.call('set', KEYS[4], '1', 'NX', 'PX', ARGV[5]) then
+    return {-6}
+end
+local json = redis.call('hget', KEYS[1], ARGV[1])
+if not json then
+    return {0}
+end
+local sku = cjson.decode(json)
+local now = tonumber(ARGV[4])
+if now < sku['startTime'] or now > sku['endTime'] then
+    return {-1}
+end
+if sku['randomCode'] ~= ARGV[2] then
+    return {-2}
+end
+local num = tonumber(ARGV[3])
+local limit = sku['seckillLimit']
+if not num or num <= 0 or (limit and limit ~= cjson.null and num > limit) then
+    return {-3}
+end
+if redis.call('exists', KEYS[2]) == 1 then
+    return {-4}
+end
+-- 与redisson的RSemaphore共用同一个key，值就是剩余的许可数
+local stock = tonumber(redis.call('get', KEYS[3]) or '0')
+if stock < num then
+    return {-5, stock, tonumber(redis.call('get', KEYS[5]) or '0')}
+end
+redis.call('decrby', KEYS[3], num)
+-- 扣减成功才占位，占位到秒杀结束
+local ttl = math.max(sku['endTime'] - now, 1)
+redis.call('set', KEYS[2], ARGV[3], 'PX', string.format('%d', ttl))
+return {1, json, stock - num, tonumber(redis.call('get', KEYS[5]) or '0')}
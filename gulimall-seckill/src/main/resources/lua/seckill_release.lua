@@ -0,0 +1,19 @@
+-- 归还秒杀库存：库存加回，库存归还版本号加一，一次往返原子完成
+-- KEYS[1] 库存信号量(seckill:stock:随机码)  KEYS[2] 库存归还版本号(seckill:soldout:generation:随机码)
+-- KEYS[3] 订单归还标记(seckill:released:订单号)，可选，同一个订单只归还一次
+-- ARGV[1] 归还数量
+-- 返回归还之后的版本号；库存已经回收(场次结束)或者订单已经归还过返回-1
+local ttl = redis.call('pttl', KEYS[1])
+if ttl == -2 then
+    return -1
+end
+if KEYS[3] and not redis.call('set', KEYS[3], '1', 'NX', 'PX', ttl > 0 and ttl or 86400000) then
+    return -1
+end
+redis.call('incrby', KEYS[1], ARGV[1])
+local generation = redis.call('incr', KEYS[2])
+-- 版本号和库存同时过期
+if ttl > 0 then
+    redis.call('pexpire', KEYS[2], ttl)
+end
+return generation
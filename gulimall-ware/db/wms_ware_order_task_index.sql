@@ -0,0 +1,4 @@
+-- 批量释放库存按task_id锁定工作单详情(select ... for update)，没有索引会锁住整张表
+ALTER TABLE `wms_ware_order_task_detail` ADD INDEX `idx_task_id` (`task_id`);
+-- 已关闭订单按order_sn查询工作单
+ALTER TABLE `wms_ware_order_task` ADD INDEX `idx_order_sn` (`order_sn`);
@@ -0,0 +1,2 @@
+-- 批量锁库存按(sku_id, ware_id)定位行，所有事务沿同一个索引的顺序加行锁，避免死锁
+ALTER TABLE `wms_ware_sku` ADD INDEX `idx_sku_ware` (`sku_id`, `ware_id`);
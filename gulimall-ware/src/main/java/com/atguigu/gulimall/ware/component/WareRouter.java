@@ -0,0 +1,156 @@
+package com.atguigu.gulimall.ware.component;
+
+import com.atguigu.gulimall.ware.dao.WareInfoDao;
+import com.atguigu.gulimall.ware.entity.WareInfoEntity;
+import com.atguigu.gulimall.ware.vo.SkuWareStockVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 就近仓库路由：按仓库和收货地址的距离、可用库存给候选仓库排序，并决定每个商品从哪些仓库出库
+ * 1. 仓库的区域编码(GB/T 2260行政区划代码)常驻内存，按区划层级计算距离：
+ * 仓库区域覆盖收货地址 0，同市 1，同省 2，同一大区(首位相同) 3，其他或者未知 4；
+ * 区域编码末尾补零的仓库(如110000)表示覆盖整个省/市
+ * 2. 排序：距离近的优先，距离相同时优先本订单已经用到的仓库(少拆包裹)，再优先可用库存多的(锁定时冲突少)
+ * 3. 分配：有能单独发完的仓库就只用排在最前的那一个，否则按排序依次拆分到多个仓库
+ * 仓库信息在本机修改后立即重新加载，其他节点修改的最多延迟REFRESH_INTERVAL生效
+ */
+@Slf4j
+@Component
+public class WareRouter {
+
+    private static final long REFRESH_INTERVAL = 60 * 1000;
+
+    private static final int UNKNOWN_DISTANCE = 4;
+
+    @Autowired
+    WareInfoDao wareInfoDao;
+
+    /**
+     * wareId -> 去掉末尾00之后的区域编码
+     */
+    private volatile Map<Long, String> regions = Collections.emptyMap();
+
+    private volatile long loadedAt;
+
+    private final AtomicBoolean loading = new AtomicBoolean();
+
+    @PostConstruct
+    public void reload() {
+        Map<Long, String> snapshot = new HashMap<>();
+        for (WareInfoEntity ware : wareInfoDao.selectList(null)) {
+            String region = region(ware.getAreacode());
+            if (region != null) {
+                snapshot.put(ware.getId(), region);
+            }
+        }
+        regions = Collections.unmodifiableMap(snapshot);
+        loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 按距离、是否已经用到、可用库存给某个商品的候选仓库排序，返回新的列表
+     *
+     * @param areacode     收货地址的区域编码，为空时只按库存排序
+     * @param usedWareIds  本订单其他商品已经分配到的仓库
+     */
+    public List<SkuWareStockVo> rank(List<SkuWareStockVo> stocks, String areacode, Set<Long> usedWareIds) {
+        Map<Long, String> current = snapshot();
+        String target = region(areacode);
+        List<SkuWareStockVo> ranked = new ArrayList<>(stocks);
+        ranked.sort(Comparator.<SkuWareStockVo>comparingInt(stock -> distance(current.get(stock.getWareId()), target))
+                .thenComparing(stock -> !usedWareIds.contains(stock.getWareId()))
+                .thenComparing(SkuWareStockVo::getAvailable, Comparator.reverseOrder()));
+        return ranked;
+    }
+
+    /**
+     * 在排好序的仓库中分配num件，返回 wareId -> 数量(按排序)；所有仓库加起来都不够时返回null
+     */
+    public Map<Long, Integer> allocate(List<SkuWareStockVo> ranked, int num) {
+        Map<Long, Integer> plan = new LinkedHashMap<>();
+        for (SkuWareStockVo stock : ranked) {
+            if (stock.getAvailable() >= num) {
+                plan.put(stock.getWareId(), num);
+                return plan;
+            }
+        }
+        int remaining = num;
+        for (SkuWareStockVo stock : ranked) {
+            int take = Math.min(remaining, stock.getAvailable());
+            if (take > 0) {
+                plan.put(stock.getWareId(), take);
+                remaining -= take;
+            }
+            if (remaining == 0) {
+                return plan;
+            }
+        }
+        return null;
+    }
+
+    private Map<Long, String> snapshot() {
+        if (System.currentTimeMillis() - loadedAt > REFRESH_INTERVAL && loading.compareAndSet(false, true)) {
+            try {
+                reload();
+            } catch (Exception e) {
+                // 加载失败继续用旧的数据，下次再试
+                log.warn("重新加载仓库区域失败", e);
+            } finally {
+                loading.set(false);
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * 两个区域编码的距离，编码都已经去掉末尾的00
+     */
+    private static int distance(String wareRegion, String target) {
+        if (wareRegion == null || target == null) {
+            return UNKNOWN_DISTANCE;
+        }
+        if (target.startsWith(wareRegion)) {
+            return 0;
+        }
+        int common = 0;
+        int max = Math.min(wareRegion.length(), target.length());
+        while (common + 2 <= max && wareRegion.regionMatches(common, target, common, 2)) {
+            common += 2;
+        }
+        if (common > 0) {
+            return common >= 4 ? 1 : 2;
+        }
+        return wareRegion.charAt(0) == target.charAt(0) ? 3 : UNKNOWN_DISTANCE;
+    }
+
+    /**
+     * 规范化区域编码：110105 -> 110105，110100 -> 1101，110000 -> 11；不是6位数字时返回null
+     */
+    private static String region(String areacode) {
+        if (!StringUtils.hasText(areacode)) {
+            return null;
+        }
+        String code = areacode.trim();
+        if (code.length() != 6 || !code.chars().allMatch(Character::isDigit)) {
+            return null;
+        }
+        while (code.length() > 2 && code.endsWith("00")) {
+            code = code.substring(0, code.length() - 2);
+        }
+        return code.equals("00") ? null : code;
+    }
+}
@@ -0,0 +1,279 @@
+package com.atguigu.gulimall.ware.component;
+
+import com.atguigu.gulimall.ware.config.WareStockCacheProperties;
+import com.atguigu.gulimall.ware.dao.WareSkuDao;
+import com.atguigu.gulimall.ware.vo.SkuWareStockVo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 可用库存缓存：skuId -> (wareId -> stock - stock_locked)
+ * 1. 读：本地近端缓存 -> redis(一次pipeline取回所有未命中的sku) -> 数据库(一条in查询)，加载结果只在redis没有这个key时写入
+ * 2. 写：入库、锁定、解锁在数据库事务提交后把增量写到redis，同一个事务的增量用一次lua脚本提交；
+ * 只对已经缓存的sku做hincrby，没缓存的等下次读取时从数据库加载
+ * 3. 写redis失败时删除相关的key，下次读取重新加载；读redis失败时抛出异常，由调用方降级查询数据库
+ * 缓存只给展示和预判使用，锁库存仍以数据库的条件更新为准
+ */
+@Slf4j
+@Component
+public class WareStockCache {
+
+    private static final String KEY_PREFIX = "ware:stock:";
+
+    /**
+     * 占位字段，没有任何库存记录的sku也缓存下来，避免每次穿透到数据库
+     */
+    private static final String PLACEHOLDER = "_";
+
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    /**
+     * KEYS: 每个sku的key；ARGV: 每个key对应一组(wareId, delta)
+     */
+    private static final String APPLY_SCRIPT =
+            "for i = 1, #KEYS do " +
+                    "if redis.call('exists', KEYS[i]) == 1 then " +
+                    "redis.call('hincrby', KEYS[i], ARGV[2 * i - 1], ARGV[2 * i]) " +
+                    "end " +
+                    "end " +
+                    "return 1";
+
+    /**
+     * ARGV[1]: 过期时间，之后每个key依次是字段数n和n组(wareId, available)；key已经存在时不覆盖(期间可能有增量写入)
+     */
+    private static final String LOAD_SCRIPT =
+            "local i = 2 " +
+                    "for k = 1, #KEYS do " +
+                    "local n = tonumber(ARGV[i]) " +
+                    "i = i + 1 " +
+                    "if redis.call('exists', KEYS[k]) == 0 then " +
+                    "redis.call('hmset', KEYS[k], unpack(ARGV, i, i + 2 * n - 1)) " +
+                    "redis.call('pexpire', KEYS[k], ARGV[1]) " +
+                    "end " +
+                    "i = i + 2 * n " +
+                    "end " +
+                    "return 1";
+
+    private final DefaultRedisScript<Long> applyScript = new DefaultRedisScript<>(APPLY_SCRIPT, Long.class);
+
+    private final DefaultRedisScript<Long> loadScript = new DefaultRedisScript<>(LOAD_SCRIPT, Long.class);
+
+    @Autowired
+    StringRedisTemplate redisTemplate;
+
+    @Autowired
+    WareSkuDao wareSkuDao;
+
+    @Autowired
+    WareStockCacheProperties properties;
+
+    private final ConcurrentHashMap<Long, NearEntry> near = new ConcurrentHashMap<>();
+
+    /**
+     * 查询一批sku在各个仓库的可用库存，没有库存记录的sku返回空map，返回的map不能修改
+     * redis不可用时抛出异常
+     */
+    public Map<Long, Map<Long, Integer>> getAvailable(Collection<Long> skuIds) {
+        Map<Long, Map<Long, Integer>> result = new HashMap<>(skuIds.size() * 2);
+        List<Long> misses = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Long skuId : new LinkedHashSet<>(skuIds)) {
+            NearEntry entry = near.get(skuId);
+            if (entry != null && entry.expireAt > now) {
+                result.put(skuId, entry.stocks);
+            } else {
+                misses.add(skuId);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, Map<Long, Integer>> loaded = loadFromRedis(misses);
+        long expireAt = System.currentTimeMillis() + properties.getNearTtl();
+        if (near.size() + loaded.size() > properties.getNearMaxSize()) {
+            near.clear();
+        }
+        loaded.forEach((skuId, stocks) -> near.put(skuId, new NearEntry(stocks, expireAt)));
+        result.putAll(loaded);
+        return result;
+    }
+
+    /**
+     * 某个sku在某个仓库的可用库存变化了，当前有事务时在提交后写入，回滚则丢弃
+     */
+    public void changed(Long skuId, Long wareId, int delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(Collections.singletonList(new Delta(skuId, wareId, delta)));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<Delta> pending = (List<Delta>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<Delta> deltas = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, deltas);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResource(WareStockCache.this);
+                    if (status == STATUS_COMMITTED) {
+                        apply(deltas);
+                    }
+                }
+            });
+            pending = deltas;
+        }
+        pending.add(new Delta(skuId, wareId, delta));
+    }
+
+    /**
+     * 库存记录被直接修改(后台编辑、删除)时，丢弃这些sku的缓存
+     */
+    public void evict(Collection<Long> skuIds) {
+        List<String> keys = new ArrayList<>(skuIds.size());
+        for (Long skuId : skuIds) {
+            if (skuId != null) {
+                near.remove(skuId);
+                keys.add(KEY_PREFIX + skuId);
+            }
+        }
+        if (keys.isEmpty()) {
+            return;
+        }
+        try {
+            redisTemplate.delete(keys);
+        } catch (Exception e) {
+            log.error("删除库存缓存失败，等待过期：{}", skuIds, e);
+        }
+    }
+
+    private void apply(List<Delta> deltas) {
+        List<String> keys = new ArrayList<>(deltas.size());
+        List<String> args = new ArrayList<>(deltas.size() * 2);
+        List<Long> skuIds = new ArrayList<>(deltas.size());
+        for (Delta delta : deltas) {
+            near.remove(delta.skuId);
+            skuIds.add(delta.skuId);
+            keys.add(KEY_PREFIX + delta.skuId);
+            args.add(delta.wareId.toString());
+            args.add(Integer.toString(delta.delta));
+        }
+        try {
+            redisTemplate.execute(applyScript, keys, args.toArray());
+        } catch (Exception e) {
+            log.warn("写入库存缓存失败，删除缓存等待重新加载：{}", skuIds, e);
+            evict(skuIds);
+        }
+    }
+
+    private Map<Long, Map<Long, Integer>> loadFromRedis(List<Long> skuIds) {
+        List<Object> hashes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Long skuId : skuIds) {
+                connection.hGetAll(key(skuId));
+            }
+            return null;
+        });
+
+        Map<Long, Map<Long, Integer>> result = new HashMap<>(skuIds.size() * 2);
+        List<Long> misses = new ArrayList<>();
+        for (int i = 0; i < skuIds.size(); i++) {
+            @SuppressWarnings("unchecked")
+            Map<String, String> hash = (Map<String, String>) hashes.get(i);
+            if (hash == null || hash.isEmpty()) {
+                misses.add(skuIds.get(i));
+                continue;
+            }
+            Map<Long, Integer> stocks = new HashMap<>(hash.size() * 2);
+            hash.forEach((field, value) -> {
+                if (!PLACEHOLDER.equals(field)) {
+                    stocks.put(Long.parseLong(field), Integer.parseInt(value));
+                }
+            });
+            result.put(skuIds.get(i), Collections.unmodifiableMap(stocks));
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+
+        Map<Long, Map<Long, Integer>> loaded = loadFromDb(misses);
+        // 所有未命中的sku用一次脚本写回redis
+        List<String> keys = new ArrayList<>(loaded.size());
+        List<String> args = new ArrayList<>();
+        args.add(properties.getTtl().toString());
+        loaded.forEach((skuId, stocks) -> {
+            keys.add(KEY_PREFIX + skuId);
+            args.add(Integer.toString(stocks.size() + 1));
+            args.add(PLACEHOLDER);
+            args.add("0");
+            stocks.forEach((wareId, available) -> {
+                args.add(wareId.toString());
+                args.add(available.toString());
+            });
+        });
+        redisTemplate.execute(loadScript, keys, args.toArray());
+        result.putAll(loaded);
+        return result;
+    }
+
+    private Map<Long, Map<Long, Integer>> loadFromDb(List<Long> skuIds) {
+        Map<Long, Map<Long, Integer>> result = new HashMap<>(skuIds.size() * 2);
+        for (Long skuId : skuIds) {
+            result.put(skuId, new HashMap<>());
+        }
+        for (int from = 0; from < skuIds.size(); from += LOAD_BATCH_SIZE) {
+            List<Long> batch = skuIds.subList(from, Math.min(from + LOAD_BATCH_SIZE, skuIds.size()));
+            for (SkuWareStockVo stock : wareSkuDao.listSkuWareStock(batch)) {
+                result.get(stock.getSkuId()).put(stock.getWareId(), stock.getAvailable());
+            }
+        }
+        result.replaceAll((skuId, stocks) -> Collections.unmodifiableMap(stocks));
+        return result;
+    }
+
+    private static byte[] key(Long skuId) {
+        return (KEY_PREFIX + skuId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class NearEntry {
+
+        private final Map<Long, Integer> stocks;
+
+        private final long expireAt;
+
+        NearEntry(Map<Long, Integer> stocks, long expireAt) {
+            this.stocks = stocks;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class Delta {
+
+        private final Long skuId;
+
+        private final Long wareId;
+
+        private final int delta;
+
+        Delta(Long skuId, Long wareId, int delta) {
+            this.skuId = skuId;
+            this.wareId = wareId;
+            this.delta = delta;
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.atguigu.gulimall.ware.config;
 
 import org.springframework.amqp.core.*;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -58,9 +60,21 @@ public class MyRabbitConfig {
                 args);
     }
 
-    @RabbitListener(queues = "stock.release.stock.queue")
-    public void handle(Message message) {
-
+    /**
+     * 释放库存队列的批量消费：一次拉取最多batchSize条消息交给监听器，手动ack，预取数和批大小一致
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory stockReleaseContainerFactory(SimpleRabbitListenerContainerFactoryConfigurer configurer,
+                                                                              ConnectionFactory connectionFactory,
+                                                                              StockReleaseProperties properties) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(properties.getBatchSize());
+        factory.setPrefetchCount(properties.getBatchSize());
+        factory.setReceiveTimeout(properties.getReceiveTimeout());
+        return factory;
     }
 
 
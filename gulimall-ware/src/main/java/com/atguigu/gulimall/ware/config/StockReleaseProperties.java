@@ -0,0 +1,22 @@
+package com.atguigu.gulimall.ware.config;
+
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties(prefix = "gulimall.ware.stock-release")
+@Component
+@Data
+public class StockReleaseProperties {
+
+    /**
+     * 释放库存的消费者一次最多拉取的消息数
+     */
+    private Integer batchSize = 100;
+
+    /**
+     * 凑批时等待下一条消息的最长时间(毫秒)，超时后不满一批也立即处理
+     */
+    private Long receiveTimeout = 200L;
+}
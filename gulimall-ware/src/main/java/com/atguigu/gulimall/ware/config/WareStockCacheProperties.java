@@ -0,0 +1,27 @@
+package com.atguigu.gulimall.ware.config;
+
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties(prefix = "gulimall.ware.stock-cache")
+@Component
+@Data
+public class WareStockCacheProperties {
+
+    /**
+     * redis中可用库存的过期时间(毫秒)，兜底修正写穿透和加载并发时可能留下的旧值
+     */
+    private Long ttl = 600000L;
+
+    /**
+     * 本地近端缓存的有效期(毫秒)，其他节点的库存变化最多延迟这么久可见
+     */
+    private Long nearTtl = 1000L;
+
+    /**
+     * 本地近端缓存最多保存的sku数
+     */
+    private Integer nearMaxSize = 100000;
+}
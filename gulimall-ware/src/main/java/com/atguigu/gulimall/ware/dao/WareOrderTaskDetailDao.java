@@ -3,6 +3,10 @@ package com.atguigu.gulimall.ware.dao;
 import com.atguigu.gulimall.ware.entity.WareOrderTaskDetailEntity;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 /**
  * 库存工作单
@@ -13,5 +17,13 @@ import org.apache.ibatis.annotations.Mapper;
  */
 @Mapper
 public interface WareOrderTaskDetailDao extends BaseMapper<WareOrderTaskDetailEntity> {
-	
+
+    void insertBatch(@Param("details") List<WareOrderTaskDetailEntity> details);
+
+    /**
+     * 锁住这些工作单下还是锁定状态的详情，按id排序加锁
+     */
+    List<WareOrderTaskDetailEntity> listLockedForUpdate(@Param("taskIds") Collection<Long> taskIds);
+
+    int updateLockStatusBatch(@Param("ids") List<Long> ids, @Param("fromStatus") Integer fromStatus, @Param("toStatus") Integer toStatus);
 }
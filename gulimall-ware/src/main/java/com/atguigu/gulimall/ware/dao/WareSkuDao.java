@@ -1,6 +1,9 @@
 package com.atguigu.gulimall.ware.dao;
 
+import com.atguigu.gulimall.ware.entity.WareOrderTaskDetailEntity;
 import com.atguigu.gulimall.ware.entity.WareSkuEntity;
+import com.atguigu.gulimall.ware.vo.SkuHasStockVo;
+import com.atguigu.gulimall.ware.vo.SkuWareStockVo;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
@@ -21,9 +24,29 @@ public interface WareSkuDao extends BaseMapper<WareSkuEntity> {
 
     Long getSkuStock(@Param("skuId") Long skuId);
 
+    /**
+     * 一条group by查出一批sku是否有可用库存，没有库存记录的sku不在结果中
+     */
+    List<SkuHasStockVo> listSkuHasStock(@Param("skuIds") List<Long> skuIds);
+
+    /**
+     * 一批sku在每个仓库的可用库存
+     */
+    List<SkuWareStockVo> listSkuWareStock(@Param("skuIds") List<Long> skuIds);
+
     List<Long> listWareIdHasSkuStock(@Param("skuId") Long skuId);
 
     Long lockSkuStock(@Param("skuId") Long skuId, @Param("wareId") Long wareId, @Param("num") Integer num);
 
+    /**
+     * 一条update锁定多个(sku, 仓库)，每一行都要求可用库存足够，返回实际锁定的行数
+     */
+    int lockSkuStockBatch(@Param("locks") List<WareOrderTaskDetailEntity> locks);
+
     void unlockStock(@Param("skuId") Long skuId, @Param("wareId") Long wareId, @Param("num") Integer num);
+
+    /**
+     * 一条update归还多个(sku, 仓库)的锁定库存，同一个(sku, 仓库)只能出现一次
+     */
+    int unlockStockBatch(@Param("unlocks") List<WareOrderTaskDetailEntity> unlocks);
 }
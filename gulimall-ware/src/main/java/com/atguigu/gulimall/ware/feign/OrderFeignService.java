@@ -4,6 +4,10 @@ import com.atguigu.common.utils.R;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+
+import java.util.List;
 
 /**
  * @author: maruimin
@@ -15,4 +19,10 @@ public interface OrderFeignService {
 
     @GetMapping("/order/order/status/{orderSn}")
     R getOrderstatus(@PathVariable("orderSn") String orderSn);
+
+    /**
+     * 批量查询订单状态，data是 订单号 -> 状态，不存在的订单不在结果中
+     */
+    @PostMapping("/order/order/status/batch")
+    R listOrderStatus(@RequestBody List<String> orderSns);
 }
@@ -1,61 +1,90 @@
 package com.atguigu.gulimall.ware.listener;
 
+import com.atguigu.common.to.mq.OrderBatchReleaseTo;
 import com.atguigu.common.to.mq.OrderTo;
 import com.atguigu.common.to.mq.StockLockedTo;
-import com.atguigu.gulimall.ware.service.WareOrderTaskDetailService;
-import com.atguigu.gulimall.ware.service.WareOrderTaskService;
 import com.atguigu.gulimall.ware.service.WareSkuService;
 import com.rabbitmq.client.Channel;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.Message;
-import org.springframework.amqp.rabbit.annotation.RabbitHandler;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
+ * 释放库存队列的批量消费者，一次最多拉取batchSize条消息：
+ * 库存锁定到期(StockLockedTo)、订单关闭(OrderTo)、批量订单关闭(OrderBatchReleaseTo)合并成一次释放，
+ * 成功后一次ack整批；整批失败时逐条重试，只有仍然失败的消息重新投递，避免一条坏消息拖住整批
+ *
  * @author: maruimin
  * @date: 2020/6/13 21:01
  */
-
-
+@Slf4j
 @Service
-@RabbitListener(queues = "stock.release.stock.queue")
 public class StockReleaseListener {
 
     @Autowired
     WareSkuService wareSkuService;
 
     @Autowired
-    WareOrderTaskDetailService wareOrderTaskDetailService;
+    MessageConverter messageConverter;
 
-    @Autowired
-    WareOrderTaskService wareOrderTaskService;
-
-    @RabbitHandler
-    public void handleStockLockedRelease(StockLockedTo to, Message message, Channel channel) throws IOException {
-        System.out.println("收到解锁库存的消息.......");
+    @RabbitListener(queues = "stock.release.stock.queue", containerFactory = "stockReleaseContainerFactory")
+    public void handleStockRelease(List<Message> messages, Channel channel) throws IOException {
+        Set<Long> taskIds = new LinkedHashSet<>();
+        Set<String> closedOrderSns = new LinkedHashSet<>();
+        for (Message message : messages) {
+            collect(message, taskIds, closedOrderSns);
+        }
         try {
-            wareSkuService.unlockStock(to);
-            channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
+            wareSkuService.releaseStock(taskIds, closedOrderSns);
+            // 按投递顺序ack，最后一条的deliveryTag带multiple一次确认整批
+            channel.basicAck(messages.get(messages.size() - 1).getMessageProperties().getDeliveryTag(), true);
+            return;
         } catch (Exception e) {
-            channel.basicReject(message.getMessageProperties().getDeliveryTag(), true);
+            log.warn("批量释放库存失败，{}条消息逐条重试", messages.size(), e);
         }
 
+        for (Message message : messages) {
+            long deliveryTag = message.getMessageProperties().getDeliveryTag();
+            Set<Long> oneTaskIds = new LinkedHashSet<>();
+            Set<String> oneOrderSns = new LinkedHashSet<>();
+            collect(message, oneTaskIds, oneOrderSns);
+            try {
+                wareSkuService.releaseStock(oneTaskIds, oneOrderSns);
+                channel.basicAck(deliveryTag, false);
+            } catch (Exception e) {
+                log.error("释放库存失败，消息重新投递：{}", oneTaskIds.isEmpty() ? oneOrderSns : oneTaskIds, e);
+                channel.basicReject(deliveryTag, true);
+            }
+        }
     }
 
-    @RabbitHandler
-    public void handleOrderCloseRelease(OrderTo to, Message message, Channel channel) throws IOException {
-        System.out.println("订单关闭准备解锁库存.............");
+    private void collect(Message message, Set<Long> taskIds, Set<String> closedOrderSns) {
+        Object body;
         try {
-            wareSkuService.unlockStock(to);
-            channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
+            body = messageConverter.fromMessage(message);
         } catch (Exception e) {
-            channel.basicReject(message.getMessageProperties().getDeliveryTag(), true);
+            log.error("无法解析的释放库存消息，直接丢弃", e);
+            return;
+        }
+        if (body instanceof StockLockedTo) {
+            taskIds.add(((StockLockedTo) body).getId());
+        } else if (body instanceof OrderTo) {
+            closedOrderSns.add(((OrderTo) body).getOrderSn());
+        } else if (body instanceof OrderBatchReleaseTo) {
+            List<String> orderSns = ((OrderBatchReleaseTo) body).getOrderSns();
+            closedOrderSns.addAll(orderSns == null ? Collections.emptyList() : orderSns);
+        } else {
+            log.error("未知的释放库存消息类型，直接丢弃：{}", body == null ? null : body.getClass());
         }
-
     }
 
-
 }
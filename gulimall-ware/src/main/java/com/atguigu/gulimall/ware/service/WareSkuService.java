@@ -8,6 +8,7 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.atguigu.common.utils.PageUtils;
 import com.atguigu.gulimall.ware.entity.WareSkuEntity;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -31,5 +32,13 @@ public interface WareSkuService extends IService<WareSkuEntity> {
     void unlockStock(StockLockedTo to);
 
     void unlockStock(OrderTo orderTo);
+
+    /**
+     * 批量释放库存
+     *
+     * @param taskIds        库存锁定消息到期的工作单，订单已取消或者不存在时才解锁
+     * @param closedOrderSns 已关闭的订单号，直接解锁
+     */
+    void releaseStock(Collection<Long> taskIds, Collection<String> closedOrderSns);
 }
 
@@ -4,6 +4,7 @@ import com.alibaba.fastjson.TypeReference;
 import com.atguigu.common.utils.PageUtils;
 import com.atguigu.common.utils.Query;
 import com.atguigu.common.utils.R;
+import com.atguigu.gulimall.ware.component.WareRouter;
 import com.atguigu.gulimall.ware.dao.WareInfoDao;
 import com.atguigu.gulimall.ware.entity.WareInfoEntity;
 import com.atguigu.gulimall.ware.feign.MemberFeignService;
@@ -17,7 +18,9 @@ import org.apache.commons.lang.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.Map;
 
 
@@ -27,6 +30,9 @@ public class WareInfoServiceImpl extends ServiceImpl<WareInfoDao, WareInfoEntity
     @Autowired
     MemberFeignService memberFeignService;
 
+    @Autowired
+    WareRouter wareRouter;
+
     @Override
     public PageUtils queryPage(Map<String, Object> params) {
         QueryWrapper<WareInfoEntity> wareInfoEntityQueryWrapper = new QueryWrapper<>();
@@ -45,6 +51,30 @@ public class WareInfoServiceImpl extends ServiceImpl<WareInfoDao, WareInfoEntity
         return new PageUtils(page);
     }
 
+    /**
+     * 仓库信息修改后重新加载路由用的仓库区域
+     */
+    @Override
+    public boolean save(WareInfoEntity entity) {
+        boolean saved = super.save(entity);
+        wareRouter.reload();
+        return saved;
+    }
+
+    @Override
+    public boolean updateById(WareInfoEntity entity) {
+        boolean updated = super.updateById(entity);
+        wareRouter.reload();
+        return updated;
+    }
+
+    @Override
+    public boolean removeByIds(Collection<? extends Serializable> idList) {
+        boolean removed = super.removeByIds(idList);
+        wareRouter.reload();
+        return removed;
+    }
+
     @Override
     public FareVo getFare(Long addrId) {
         FareVo fareVo = new FareVo();
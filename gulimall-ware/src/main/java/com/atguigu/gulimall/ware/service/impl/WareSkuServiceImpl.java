@@ -3,11 +3,13 @@ package com.atguigu.gulimall.ware.service.impl;
 import com.alibaba.fastjson.TypeReference;
 import com.atguigu.common.exception.NoStockException;
 import com.atguigu.common.to.mq.OrderTo;
-import com.atguigu.common.to.mq.StockDetailTo;
 import com.atguigu.common.to.mq.StockLockedTo;
 import com.atguigu.common.utils.PageUtils;
 import com.atguigu.common.utils.Query;
 import com.atguigu.common.utils.R;
+import com.atguigu.gulimall.ware.component.WareRouter;
+import com.atguigu.gulimall.ware.component.WareStockCache;
+import com.atguigu.gulimall.ware.dao.WareOrderTaskDetailDao;
 import com.atguigu.gulimall.ware.dao.WareSkuDao;
 import com.atguigu.gulimall.ware.entity.WareOrderTaskDetailEntity;
 import com.atguigu.gulimall.ware.entity.WareOrderTaskEntity;
@@ -18,33 +20,42 @@ import com.atguigu.gulimall.ware.service.WareOrderTaskDetailService;
 import com.atguigu.gulimall.ware.service.WareOrderTaskService;
 import com.atguigu.gulimall.ware.service.WareSkuService;
 import com.atguigu.gulimall.ware.vo.OrderItemVo;
-import com.atguigu.gulimall.ware.vo.OrderVo;
 import com.atguigu.gulimall.ware.vo.SkuHasStockVo;
+import com.atguigu.gulimall.ware.vo.SkuWareStockVo;
 import com.atguigu.gulimall.ware.vo.WareSkuLockVo;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.rabbitmq.client.Channel;
-import lombok.Data;
-import org.springframework.amqp.core.Message;
-import org.springframework.amqp.rabbit.annotation.RabbitHandler;
-import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 import org.springframework.util.StringUtils;
 
-import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
-@RabbitListener(queues = "stock.release.stock.queue")
+@Slf4j
 @Service("wareSkuService")
 public class WareSkuServiceImpl extends ServiceImpl<WareSkuDao, WareSkuEntity> implements WareSkuService {
 
+    /**
+     * 批量查询库存时每条sql的sku数量上限
+     */
+    private static final int STOCK_QUERY_BATCH_SIZE = 500;
+
     @Autowired
     WareSkuDao wareSkuDao;
 
@@ -61,72 +72,16 @@ public class WareSkuServiceImpl extends ServiceImpl<WareSkuDao, WareSkuEntity> i
     WareOrderTaskDetailService wareOrderTaskDetailService;
 
     @Autowired
-    OrderFeignService orderFeignService;
-
-    /**
-     * 1. 库存自动解锁。
-     * 下订单成功，库存锁定成功，接下来的业务调用失败，导致订单回滚，之前锁定的库存就要自动解锁
-     * 2. 订单失败
-     * 锁库存失败
-     *
-     * @param to
-     * @param message
-     */
-    @RabbitHandler
-    public void handleStockLockedRelease(StockLockedTo to, Message message, Channel channel) throws IOException {
-        System.out.println("收到解锁库存的消息");
-        StockDetailTo detail = to.getDetailTo();
-        Long detailId = detail.getId();
-        /**
-         * 解锁
-         * 1. 查询数据库关于这个订单的锁定库存信息。
-         * 有：证明库存锁定成功了
-         * 解锁：需要判断订单状态
-         *      1. 没有这个订单，必须解锁
-         *      2. 有这个订单，不是解锁库存
-         *              订单状态：已取消：解锁库存
-         *                               没取消：不能解锁库存
-         *
-         * 没有：库存锁定失败了，库存回滚了。这种情况无需解锁
-         */
-        WareOrderTaskDetailEntity byId = wareOrderTaskDetailService.getById(detailId);
-        if (byId != null) {
-            // 说明锁定成功了，这种情况需要解锁库存
-            Long id = to.getId();
-            WareOrderTaskEntity taskEntity = wareOrderTaskService.getById(id);
-            String orderSn = taskEntity.getOrderSn();
-            R r = orderFeignService.getOrderstatus(orderSn);
-            if (r.getCode() == 0) {
-                // 订单数据查询成功
-                OrderVo data = r.getData(new TypeReference<OrderVo>() {
-                });
-                if (data == null || data.getStatus() == 4) {
-                    // 订单已经取消了或者订单不存在。才能解锁库存
-                    unLockStock(detail.getSkuId(), detail.getWareId(), detail.getSkuNum(), detailId);
-                    channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
-                }
-            } else {
-                // 消息拒绝以后重新放回队列，让别人来解锁
-                channel.basicReject(message.getMessageProperties().getDeliveryTag(), true);
-            }
-
-        } else {
-            // 没有，说明库存锁定失败了，库存回滚了。这种情况无需解锁
-            channel.basicAck(message.getMessageProperties().getDeliveryTag(), false);
-        }
+    WareOrderTaskDetailDao wareOrderTaskDetailDao;
 
-    }
+    @Autowired
+    OrderFeignService orderFeignService;
 
-    private void unLockStock(Long skuId, Long wareId, Integer num, Long taskDetailId) {
-        // 库存解锁
-        wareSkuDao.unlockStock(skuId, wareId, num);
-        // 更新库存工作单的状态
-        WareOrderTaskDetailEntity entity = new WareOrderTaskDetailEntity();
-        entity.setId(taskDetailId);
-        entity.setLockStatus(2); // 变为已解锁
-        wareOrderTaskDetailService.save(entity);
+    @Autowired
+    WareRouter wareRouter;
 
-    }
+    @Autowired
+    WareStockCache stockCache;
 
     @Override
     public PageUtils queryPage(Map<String, Object> params) {
@@ -181,21 +136,78 @@ public class WareSkuServiceImpl extends ServiceImpl<WareSkuDao, WareSkuEntity> i
         } else {
             wareSkuDao.addStock(skuId, wareId, skuNum);
         }
+        stockCache.changed(skuId, wareId, skuNum);
 
     }
 
     @Override
     public List<SkuHasStockVo> getSkuHasStock(List<Long> skuIds) {
-        List<SkuHasStockVo> collect = skuIds.stream().map(skuId -> {
+        Map<Long, Boolean> hasStock;
+        try {
+            // 先读可用库存缓存，各仓库可用库存之和大于0就是有货
+            hasStock = new HashMap<>(skuIds.size() * 2);
+            for (Map.Entry<Long, Map<Long, Integer>> entry : stockCache.getAvailable(skuIds).entrySet()) {
+                int available = entry.getValue().values().stream().mapToInt(Integer::intValue).sum();
+                hasStock.put(entry.getKey(), available > 0);
+            }
+        } catch (Exception e) {
+            log.warn("库存缓存不可用，直接查询数据库", e);
+            hasStock = getSkuHasStockFromDb(skuIds);
+        }
+        // 按请求的顺序返回，没有库存记录的sku视为无货
+        Map<Long, Boolean> finalHasStock = hasStock;
+        return skuIds.stream().map(skuId -> {
             SkuHasStockVo vo = new SkuHasStockVo();
-            // 查询当前sku的总库存量
-            // select sum(stock - stock_locked) from `wms_ware_sku` where sku_id = 1
-            Long count = baseMapper.getSkuStock(skuId);
             vo.setSkuId(skuId);
-            vo.setHasStock(count != null && count > 0);
+            vo.setHasStock(finalHasStock.getOrDefault(skuId, false));
             return vo;
         }).collect(Collectors.toList());
-        return collect;
+    }
+
+    private Map<Long, Boolean> getSkuHasStockFromDb(List<Long> skuIds) {
+        // 每批一条 select sku_id, sum(stock - stock_locked) > 0 ... where sku_id in (...) group by sku_id
+        Map<Long, Boolean> hasStock = new HashMap<>(skuIds.size() * 2);
+        List<Long> distinct = skuIds.stream().distinct().collect(Collectors.toList());
+        for (int from = 0; from < distinct.size(); from += STOCK_QUERY_BATCH_SIZE) {
+            List<Long> batch = distinct.subList(from, Math.min(from + STOCK_QUERY_BATCH_SIZE, distinct.size()));
+            for (SkuHasStockVo vo : baseMapper.listSkuHasStock(batch)) {
+                hasStock.put(vo.getSkuId(), Boolean.TRUE.equals(vo.getHasStock()));
+            }
+        }
+        return hasStock;
+    }
+
+    /**
+     * 后台直接新增、修改、删除库存记录时丢弃缓存，正常的入库和锁库存走写穿透
+     */
+    @Override
+    public boolean save(WareSkuEntity entity) {
+        boolean saved = super.save(entity);
+        stockCache.evict(Collections.singletonList(entity.getSkuId()));
+        return saved;
+    }
+
+    @Override
+    public boolean updateById(WareSkuEntity entity) {
+        WareSkuEntity old = this.getById(entity.getId());
+        boolean updated = super.updateById(entity);
+        Set<Long> skuIds = new HashSet<>();
+        if (old != null) {
+            skuIds.add(old.getSkuId());
+        }
+        if (entity.getSkuId() != null) {
+            skuIds.add(entity.getSkuId());
+        }
+        stockCache.evict(skuIds);
+        return updated;
+    }
+
+    @Override
+    public boolean removeByIds(Collection<? extends Serializable> idList) {
+        Set<Long> skuIds = this.listByIds(idList).stream().map(WareSkuEntity::getSkuId).collect(Collectors.toSet());
+        boolean removed = super.removeByIds(idList);
+        stockCache.evict(skuIds);
+        return removed;
     }
 
 
@@ -222,102 +234,94 @@ public class WareSkuServiceImpl extends ServiceImpl<WareSkuDao, WareSkuEntity> i
         taskEntity.setOrderSn(vo.getOrderSn());
         wareOrderTaskService.save(taskEntity);
 
-        // 1. 按照下单的收货地址，找到一个就近仓库，锁定库存
-
-        // 1. 找到每个商品在哪个仓库都有库存
-        List<OrderItemVo> locks = vo.getLocks();
-
-        List<SkuWareHasStock> collect = locks.stream().map(item -> {
-            SkuWareHasStock stock = new SkuWareHasStock();
-            Long skuId = item.getSkuId();
-            stock.setSkuId(skuId);
-            stock.setNum(item.getCount());
-            // 查询这个商品在哪里有库存
-            List<Long> wareIds = wareSkuDao.listWareIdHasSkuStock(skuId);
-            stock.setWareId(wareIds);
-            return stock;
-        }).collect(Collectors.toList());
+        // 合并同一个sku的数量，按sku_id排序，所有订单按相同的顺序加行锁，避免死锁
+        Map<Long, Integer> needs = new TreeMap<>();
+        for (OrderItemVo item : vo.getLocks()) {
+            needs.merge(item.getSkuId(), item.getCount(), Integer::sum);
+        }
 
-        // 2. 锁定库存
-        for (SkuWareHasStock hasStock : collect) {
-            Boolean skuStocked = false;
-            Long skuId = hasStock.getSkuId();
-            List<Long> wareIds = hasStock.getWareId();
-            if (wareIds == null || wareIds.size() == 0) {
-                // 没有任何仓库有这个商品的库存，直接抛出错误
+        // 1. 一条sql查出所有商品在各个仓库的可用库存
+        Map<Long, List<SkuWareStockVo>> candidates = wareSkuDao.listSkuWareStock(new ArrayList<>(needs.keySet())).stream()
+                .filter(stock -> stock.getAvailable() > 0)
+                .collect(Collectors.groupingBy(SkuWareStockVo::getSkuId));
+
+        // 2. 按快照给每个商品选择离收货地址最近的仓库，一个仓库不够时拆分到多个仓库，一条update全部锁定
+        Map<Long, List<SkuWareStockVo>> ranked = new HashMap<>(needs.size() * 2);
+        Set<Long> usedWareIds = new HashSet<>();
+        List<WareOrderTaskDetailEntity> locks = new ArrayList<>(needs.size());
+        for (Map.Entry<Long, Integer> need : needs.entrySet()) {
+            Long skuId = need.getKey();
+            List<SkuWareStockVo> wares = wareRouter.rank(candidates.getOrDefault(skuId, Collections.emptyList()),
+                    vo.getAreacode(), usedWareIds);
+            ranked.put(skuId, wares);
+            Map<Long, Integer> plan = wareRouter.allocate(wares, need.getValue());
+            if (plan == null) {
                 throw new NoStockException(skuId);
             }
+            plan.forEach((wareId, num) -> {
+                locks.add(new WareOrderTaskDetailEntity(null, skuId, "", num, taskEntity.getId(), wareId, 1));
+                usedWareIds.add(wareId);
+            });
+        }
+        TransactionStatus status = TransactionAspectSupport.currentTransactionStatus();
+        Object savepoint = status.createSavepoint();
+        List<WareOrderTaskDetailEntity> locked = locks;
+        if (wareSkuDao.lockSkuStockBatch(locks) == locks.size()) {
+            status.releaseSavepoint(savepoint);
+        } else {
+            // 查询之后库存被其他订单抢走了，撤销这次批量锁定，逐个商品按路由顺序尝试
+            status.rollbackToSavepoint(savepoint);
+            locked = lockOneByOne(needs, ranked, taskEntity.getId());
+        }
 
-            // 1. 如果每一个商品都锁定成功，将当前商品锁定了几件的工作单记录发送给MQ
-            // 2. 锁定失败，前面保存的工作单信息就回滚了，发送出去的消息，即使要解锁记录，由于去数据库查不到id, 所以就不用解锁
-            for (Long wareId : wareIds) {
-                Long count = wareSkuDao.lockSkuStock(skuId, wareId, hasStock.getNum());
-                if (count == 1) {
-                    // 锁定成功就返回1，否则就是返回0
-                    WareOrderTaskDetailEntity entity = new WareOrderTaskDetailEntity(null, skuId, "", hasStock.getNum(), taskEntity.getId(), wareId, 1);
-                    wareOrderTaskDetailService.save(entity);
-                    StockLockedTo lockedTo = new StockLockedTo();
-                    lockedTo.setId(taskEntity.getId());
-                    StockDetailTo stockDetailTo = new StockDetailTo();
-                    BeanUtils.copyProperties(entity, stockDetailTo);
-                    // 只发ID不行，防止回滚以后找不到数据
-                    lockedTo.setDetailTo(stockDetailTo);
-                    rabbitTemplate.convertAndSend("stock-event-exchange", "stock.locked", lockedTo);
-                    skuStocked = true;
-                    break;
-                } else {
-                    // 当前仓库所失败，重试下一个仓库
-                }
-            }
-            if (!skuStocked) {
-                // 当前商品所有的仓库都没有锁住
-                throw new NoStockException(skuId);
-            }
+        // 3. 一条insert保存所有工作单详情
+        wareOrderTaskDetailDao.insertBatch(locked);
+        for (WareOrderTaskDetailEntity lock : locked) {
+            stockCache.changed(lock.getSkuId(), lock.getWareId(), -lock.getSkuNum());
         }
 
+        // 4. 一个订单只发一条消息，延迟到期后按工作单整体检查是否需要解锁
+        // 锁定失败时工作单回滚，消息即使发出去也查不到工作单，不用解锁
+        StockLockedTo lockedTo = new StockLockedTo();
+        lockedTo.setId(taskEntity.getId());
+        rabbitTemplate.convertAndSend("stock-event-exchange", "stock.locked", lockedTo);
         return true;
     }
 
-    @Override
-    public void unlockStock(StockLockedTo to) {
-        System.out.println("收到解锁库存的消息");
-        StockDetailTo detail = to.getDetailTo();
-        Long detailId = detail.getId();
-        /**
-         * 解锁
-         * 1. 查询数据库关于这个订单的锁定库存信息。
-         * 有：证明库存锁定成功了
-         * 解锁：需要判断订单状态
-         *      1. 没有这个订单，必须解锁
-         *      2. 有这个订单，不是解锁库存
-         *              订单状态：已取消：解锁库存
-         *                               没取消：不能解锁库存
-         *
-         * 没有：库存锁定失败了，库存回滚了。这种情况无需解锁
-         */
-        WareOrderTaskDetailEntity byId = wareOrderTaskDetailService.getById(detailId);
-        if (byId != null) {
-            // 说明锁定成功了，这种情况需要解锁库存
-            Long id = to.getId();
-            WareOrderTaskEntity taskEntity = wareOrderTaskService.getById(id);
-            String orderSn = taskEntity.getOrderSn();
-            R r = orderFeignService.getOrderstatus(orderSn);
-            if (r.getCode() == 0) {
-                // 订单数据查询成功
-                OrderVo data = r.getData(new TypeReference<OrderVo>() {
-                });
-                if (data == null || data.getStatus() == 4) {
-                    // 订单已经取消了或者订单不存在。才能解锁库存
-                    if (byId.getLockStatus() == 1) {
-                        // 当前库存工作单详情, 状态1 已锁定但是未解锁才可以解锁
-                        unLockStock(detail.getSkuId(), detail.getWareId(), detail.getSkuNum(), detailId);
+    /**
+     * 按sku_id顺序逐个锁定，每个商品按路由排好的仓库依次锁定剩余数量(不超过快照里的可用库存)，锁不住就试下一个
+     */
+    private List<WareOrderTaskDetailEntity> lockOneByOne(Map<Long, Integer> needs, Map<Long, List<SkuWareStockVo>> ranked, Long taskId) {
+        List<WareOrderTaskDetailEntity> locks = new ArrayList<>(needs.size());
+        for (Map.Entry<Long, Integer> need : needs.entrySet()) {
+            Long skuId = need.getKey();
+            int remaining = need.getValue();
+            for (SkuWareStockVo ware : ranked.get(skuId)) {
+                int num = Math.min(remaining, ware.getAvailable());
+                if (wareSkuDao.lockSkuStock(skuId, ware.getWareId(), num) == 1) {
+                    locks.add(new WareOrderTaskDetailEntity(null, skuId, "", num, taskId, ware.getWareId(), 1));
+                    remaining -= num;
+                    if (remaining == 0) {
+                        break;
                     }
                 }
-            } else {
-                throw new RuntimeException("远程服务解锁失败");
+            }
+            if (remaining > 0) {
+                // 当前商品所有的仓库加起来都不够
+                throw new NoStockException(skuId);
             }
         }
+        return locks;
+    }
 
+    /**
+     * 库存锁定消息延迟到期：订单已取消或者不存在时解锁这个工作单的库存
+     * 旧格式的消息(每个工作单详情一条，多出的字段反序列化时忽略)也按工作单整体处理，解锁是幂等的
+     */
+    @Transactional
+    @Override
+    public void unlockStock(StockLockedTo to) {
+        releaseStock(Collections.singletonList(to.getId()), Collections.emptyList());
     }
 
     /**
@@ -329,26 +333,68 @@ public class WareSkuServiceImpl extends ServiceImpl<WareSkuDao, WareSkuEntity> i
     @Transactional
     @Override
     public void unlockStock(OrderTo orderTo) {
-        String orderSn = orderTo.getOrderSn();
-        // 查一下最新库存的状态，防止重复解锁库存
-        WareOrderTaskEntity task = wareOrderTaskService.getOrderTaskByOrderSn(orderSn);
-        Long id = task.getId();
-        // 按照工作单找到所有没有解锁的库存，进行解锁
-        List<WareOrderTaskDetailEntity> entities = wareOrderTaskDetailService.list(
-                new QueryWrapper<WareOrderTaskDetailEntity>()
-                        .eq("task_id", id)
-                        .eq("lock_status", 1));
-        for (WareOrderTaskDetailEntity entity : entities) {
-            unLockStock(entity.getSkuId(), entity.getWareId(), entity.getSkuNum(), entity.getId());
-        }
+        releaseStock(Collections.emptyList(), Collections.singletonList(orderTo.getOrderSn()));
     }
 
-    @Data
-    class SkuWareHasStock {
-        private Long skuId;
-        private Integer num;
-        private List<Long> wareId;
+    /**
+     * 1. 库存锁定到期的工作单：一次远程调用查出所有订单的状态，订单已取消或者不存在的才解锁
+     * 2. 已关闭订单的工作单：直接解锁
+     * 3. 用select for update锁住还是锁定状态的工作单详情，同一个工作单并发释放时只有一个能解锁，
+     * 按(sku, 仓库)合并数量后一条update归还库存，再一条update把详情改为已解锁
+     */
+    @Transactional
+    @Override
+    public void releaseStock(Collection<Long> taskIds, Collection<String> closedOrderSns) {
+        Set<Long> releaseTaskIds = new HashSet<>();
+        if (!taskIds.isEmpty()) {
+            Collection<WareOrderTaskEntity> tasks = wareOrderTaskService.listByIds(taskIds);
+            // 锁库存失败的订单工作单已经回滚，查不到，无需解锁
+            if (!tasks.isEmpty()) {
+                List<String> orderSns = tasks.stream().map(WareOrderTaskEntity::getOrderSn).distinct().collect(Collectors.toList());
+                R r = orderFeignService.listOrderStatus(orderSns);
+                if (r.getCode() != 0) {
+                    throw new RuntimeException("远程服务解锁失败");
+                }
+                Map<String, Integer> statuses = r.getData(new TypeReference<Map<String, Integer>>() {
+                });
+                for (WareOrderTaskEntity task : tasks) {
+                    Integer status = statuses.get(task.getOrderSn());
+                    if (status == null || status == 4) {
+                        releaseTaskIds.add(task.getId());
+                    }
+                }
+            }
+        }
+        if (!closedOrderSns.isEmpty()) {
+            // 没有锁过库存的订单(比如锁库存之前就失败了)没有工作单，不需要解锁
+            wareOrderTaskService.list(new QueryWrapper<WareOrderTaskEntity>().select("id").in("order_sn", closedOrderSns))
+                    .forEach(task -> releaseTaskIds.add(task.getId()));
+        }
+        if (releaseTaskIds.isEmpty()) {
+            return;
+        }
+
+        List<WareOrderTaskDetailEntity> details = wareOrderTaskDetailDao.listLockedForUpdate(releaseTaskIds);
+        if (details.isEmpty()) {
+            return;
+        }
+        // 按sku_id、ware_id顺序合并，和锁库存的加锁顺序一致
+        Map<Long, Map<Long, Integer>> merged = new TreeMap<>();
+        List<Long> detailIds = new ArrayList<>(details.size());
+        for (WareOrderTaskDetailEntity detail : details) {
+            merged.computeIfAbsent(detail.getSkuId(), skuId -> new TreeMap<>())
+                    .merge(detail.getWareId(), detail.getSkuNum(), Integer::sum);
+            detailIds.add(detail.getId());
+        }
+        List<WareOrderTaskDetailEntity> unlocks = new ArrayList<>();
+        merged.forEach((skuId, wares) -> wares.forEach((wareId, num) ->
+                unlocks.add(new WareOrderTaskDetailEntity(null, skuId, null, num, null, wareId, null))));
+
+        wareSkuDao.unlockStockBatch(unlocks);
+        wareOrderTaskDetailDao.updateLockStatusBatch(detailIds, 1, 2);
+        for (WareOrderTaskDetailEntity unlock : unlocks) {
+            stockCache.changed(unlock.getSkuId(), unlock.getWareId(), unlock.getSkuNum());
+        }
     }
 
 }
-
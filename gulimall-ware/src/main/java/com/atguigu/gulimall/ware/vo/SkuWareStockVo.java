@@ -0,0 +1,17 @@
+package com.atguigu.gulimall.ware.vo;
+
+import lombok.Data;
+
+/**
+ * sku在某个仓库的可用库存(stock - stock_locked)
+ */
+@Data
+public class SkuWareStockVo {
+
+    private Long skuId;
+
+    private Long wareId;
+
+    private Integer available;
+
+}
@@ -14,6 +14,8 @@ public class WareSkuLockVo {
 
     private String orderSn; // 订单号
 
+    private String areacode; // 收货地址的行政区划代码，用来选择就近仓库
+
     private List<OrderItemVo> locks; // 需要锁住的所有库存信息
 
 }